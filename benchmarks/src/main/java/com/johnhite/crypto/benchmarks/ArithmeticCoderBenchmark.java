@@ -0,0 +1,140 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.compress.AdaptiveModeler;
+import com.johnhite.crypto.compress.ArithmeticCoder;
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+import com.johnhite.crypto.compress.ArithmeticCoder.Symbol;
+import com.johnhite.crypto.compress.EntropyCoder;
+import com.johnhite.crypto.compress.RangeCoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes 64KB of skewed bytes with a static order-0 model. Symbols are found for
+ * decoding by scanning the model, as the existing Modeler implementations do. Both coders use the
+ * same 2^14 scale model. The adaptive benchmarks code the same bytes with AdaptiveModeler instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArithmeticCoderBenchmark {
+    private static final int SIZE = 64 * 1024;
+
+    @Param({"arithmetic", "range"})
+    public String engine;
+
+    private byte[] data;
+    private Symbol[] model;
+    private byte[] compressed;
+    private byte[] compressedAdaptive;
+
+    @Setup
+    public void setup() throws IOException {
+        data = Inputs.text(SIZE, 1);
+        final int[] counts = new int[256];
+        for (byte b : data) {
+            counts[b & 0xFF]++;
+        }
+        //the 16 bit coder needs the total count to stay below 2^14
+        int scale = 0;
+        for (int i = 0; i < 256; i++) {
+            counts[i] = counts[i] == 0 ? 0 : Math.max(1, counts[i] / 8);
+            scale += counts[i];
+        }
+        model = new Symbol[256];
+        int low = 0;
+        for (int i = 0; i < 256; i++) {
+            model[i] = new Symbol(low, low + counts[i], scale);
+            low += counts[i];
+        }
+        compressed = encode();
+        compressedAdaptive = encodeAdaptive();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(SIZE);
+        final BitIO out = new BitIO(bytes);
+        final EntropyCoder coder = newCoder();
+        coder.initializeEncoder();
+        for (byte b : data) {
+            coder.encodeSymbol(model[b & 0xFF], out);
+        }
+        coder.flushEncoder(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decode() throws IOException {
+        final BitIO in = new BitIO(new ByteArrayInputStream(compressed));
+        final EntropyCoder coder = newCoder();
+        coder.initializeDecoder(in);
+        final Symbol scale = model[0];
+        final byte[] out = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            final int count = coder.getCurrentCount(scale);
+            int c = 0;
+            while (count >= model[c].highCount) {
+                c++;
+            }
+            coder.removeSymbolFromStream(model[c], in);
+            out[i] = (byte) c;
+        }
+        return out;
+    }
+
+    @Benchmark
+    public byte[] encodeAdaptive() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(SIZE);
+        final BitIO out = new BitIO(bytes);
+        final EntropyCoder coder = newCoder();
+        coder.initializeEncoder();
+        final AdaptiveModeler modeler = new AdaptiveModeler();
+        for (byte b : data) {
+            coder.encodeSymbol(modeler.getSymbol(b & 0xFF), out);
+            modeler.update(b & 0xFF);
+        }
+        coder.flushEncoder(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decodeAdaptive() throws IOException {
+        final BitIO in = new BitIO(new ByteArrayInputStream(compressedAdaptive));
+        final EntropyCoder coder = newCoder();
+        coder.initializeDecoder(in);
+        final AdaptiveModeler modeler = new AdaptiveModeler();
+        final byte[] out = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            final int count = coder.getCurrentCount(new Symbol(0, 0, modeler.getScale()));
+            final int c = modeler.getSymbolFromCount(count);
+            coder.removeSymbolFromStream(modeler.getSymbol(c), in);
+            modeler.update(c);
+            out[i] = (byte) c;
+        }
+        return out;
+    }
+
+    private EntropyCoder newCoder() {
+        return "range".equals(engine) ? new RangeCoder() : new ArithmeticCoder();
+    }
+}
@@ -0,0 +1,57 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.codec.Base32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base32 encoding and decoding of 1KB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base32Benchmark {
+    private byte[] data;
+    private String rfc;
+    private String crockford;
+
+    @Setup
+    public void setup() {
+        data = Inputs.bytes(1024, 1);
+        rfc = Base32.encodeRFC(data);
+        crockford = Base32.encodeCrockford(data);
+    }
+
+    @Benchmark
+    public String encodeRFC() {
+        return Base32.encodeRFC(data);
+    }
+
+    @Benchmark
+    public byte[] decodeRFC() {
+        return Base32.decodeRFC(rfc);
+    }
+
+    @Benchmark
+    public String encodeCrockford() {
+        return Base32.encodeCrockford(data);
+    }
+
+    @Benchmark
+    public byte[] decodeCrockford() {
+        return Base32.decodeCrockford(crockford);
+    }
+}
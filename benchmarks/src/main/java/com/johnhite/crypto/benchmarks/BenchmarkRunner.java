@@ -0,0 +1,56 @@
+package com.johnhite.crypto.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with allocation profiling (-prof gc) always enabled.
+ *
+ * Accepts the usual JMH command line, e.g. to run only the FF1 benchmarks with a JSON report:
+ * java -jar benchmarks/target/benchmarks.jar FF1 -rf json -rff ff1.json
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String... args) throws RunnerException, CommandLineOptionException, IOException {
+        final CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldListProfilers()) {
+            cmd.listProfilers();
+            return;
+        }
+        if (cmd.shouldListResultFormats()) {
+            cmd.listResultFormats();
+            return;
+        }
+
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        boolean gc = false;
+        for (ProfilerConfig profiler : cmd.getProfilers()) {
+            gc |= profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName());
+        }
+        if (!gc) {
+            options.addProfiler(GCProfiler.class);
+        }
+        final Runner runner = new Runner(options.build());
+        if (cmd.shouldList()) {
+            runner.list();
+        } else if (cmd.shouldListWithParams()) {
+            runner.listWithParams(cmd);
+        } else {
+            runner.run();
+        }
+    }
+}
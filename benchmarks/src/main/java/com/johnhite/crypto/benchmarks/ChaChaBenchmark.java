@@ -0,0 +1,89 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.salsa20.ChaCha;
+import com.johnhite.crypto.salsa20.ChaChaOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChaCha keystream generation and stream encryption of a 16KB buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChaChaBenchmark {
+    private static final int SIZE = 16 * 1024;
+
+    private byte[] key;
+    private byte[] nonce;
+    private byte[] data;
+    private ChaCha chacha;
+
+    @Setup
+    public void setup() {
+        key = Inputs.bytes(32, 1);
+        nonce = Inputs.bytes(8, 2);
+        data = Inputs.bytes(SIZE, 3);
+        chacha = new ChaCha(key, nonce);
+    }
+
+    /**
+     * One 64 byte keystream block.
+     */
+    @Benchmark
+    public byte[] block() {
+        return chacha.next();
+    }
+
+    @Benchmark
+    public byte[] keystream16k() {
+        final ChaCha c = new ChaCha(key, nonce);
+        final byte[] out = new byte[SIZE];
+        for (int i = 0; i < SIZE; i += 64) {
+            System.arraycopy(c.next(), 0, out, i, 64);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public byte[] keystreamBlocks16k() {
+        final ChaCha c = new ChaCha(key, nonce);
+        final byte[] out = new byte[SIZE];
+        c.keystream(out, 0, SIZE / ChaCha.BLOCK_SIZE);
+        return out;
+    }
+
+    @Benchmark
+    public void outputStream16k() throws IOException {
+        try (OutputStream out = new ChaChaOutputStream(NullOutputStream.INSTANCE, key, nonce)) {
+            out.write(data);
+        }
+    }
+
+    static final class NullOutputStream extends OutputStream {
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
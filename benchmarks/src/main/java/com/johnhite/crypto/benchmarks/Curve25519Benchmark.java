@@ -0,0 +1,48 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.schnorr.Curve25519;
+import com.johnhite.crypto.schnorr.CurvePt;
+import com.johnhite.crypto.schnorr.X25519;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar multiplication of the Curve25519 base point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Curve25519Benchmark {
+    private BigInteger scalar;
+    private byte[] privateKey;
+
+    @Setup
+    public void setup() {
+        scalar = new BigInteger(1, Inputs.bytes(32, 1)).mod(Curve25519.N);
+        privateKey = Inputs.bytes(32, 2);
+    }
+
+    @Benchmark
+    public CurvePt mul() {
+        return Curve25519.G.mul(scalar);
+    }
+
+    @Benchmark
+    public byte[] x25519() {
+        return X25519.publicKey(privateKey);
+    }
+}
@@ -0,0 +1,72 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.ffx.FF1;
+import com.johnhite.crypto.ffx.FF1Engine;
+import com.johnhite.crypto.ffx.FFXAlgorithmParameterSpec;
+import com.johnhite.crypto.ffx.RadixEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FF1 encrypt/decrypt through the String API and the allocation free engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FF1Benchmark {
+    @Param({"BASE10", "BASE36", "ASCII_PRINTABLE"})
+    public String radix;
+
+    @Param({"8", "16", "64", "256"})
+    public int length;
+
+    private FF1 ff1;
+    private FF1Engine engine;
+    private String plaintext;
+    private String ciphertext;
+    private char[] chars;
+
+    @Setup
+    public void setup() throws Exception {
+        final RadixEncoding base = Inputs.encoding(radix);
+        final SecretKey key = new SecretKeySpec(Inputs.bytes(16, 1), "AES");
+        ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(base, Inputs.bytes(8, 2)));
+        plaintext = Inputs.symbols(base, length, 3);
+        ciphertext = ff1.encrypt(plaintext);
+        engine = ff1.context(length).newEngine();
+        chars = plaintext.toCharArray();
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return ff1.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return ff1.decrypt(ciphertext);
+    }
+
+    @Benchmark
+    public char[] engineEncrypt() {
+        engine.encrypt(chars, 0, chars, 0);
+        return chars;
+    }
+}
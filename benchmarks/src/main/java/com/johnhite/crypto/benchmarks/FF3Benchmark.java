@@ -0,0 +1,75 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.ffx.FF3;
+import com.johnhite.crypto.ffx.FF3v1;
+import com.johnhite.crypto.ffx.FFXAlgorithmParameterSpec;
+import com.johnhite.crypto.ffx.RadixEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FF3 and FF3-1 encrypt/decrypt. Lengths are kept within the FF3 maximum for every radix
+ * (28 symbols for ASCII_PRINTABLE).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class FF3Benchmark {
+    @Param({"FF3", "FF3-1"})
+    public String algorithm;
+
+    @Param({"BASE10", "BASE36", "ASCII_PRINTABLE"})
+    public String radix;
+
+    @Param({"8", "16", "28"})
+    public int length;
+
+    private FF3 ff3;
+    private FF3v1 ff3v1;
+    private String plaintext;
+    private String ciphertext;
+
+    @Setup
+    public void setup() throws Exception {
+        final RadixEncoding base = Inputs.encoding(radix);
+        final SecretKey key = new SecretKeySpec(Inputs.bytes(16, 1), "AES");
+        final FFXAlgorithmParameterSpec spec = new FFXAlgorithmParameterSpec(base, Inputs.bytes(8, 2));
+        plaintext = Inputs.symbols(base, length, 3);
+        if (algorithm.equals("FF3")) {
+            ff3 = new FF3();
+            ff3.init(key, spec);
+            ciphertext = ff3.encrypt(plaintext);
+        } else {
+            ff3v1 = new FF3v1();
+            ff3v1.init(key, spec);
+            ciphertext = ff3v1.encrypt(plaintext);
+        }
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return ff3 != null ? ff3.encrypt(plaintext) : ff3v1.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return ff3 != null ? ff3.decrypt(ciphertext) : ff3v1.decrypt(ciphertext);
+    }
+}
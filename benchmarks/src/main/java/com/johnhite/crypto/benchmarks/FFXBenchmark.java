@@ -0,0 +1,56 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.ffx.FFX;
+import com.johnhite.crypto.ffx.RadixEncoders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The FFX A10 reference construction. It only supports decimal strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FFXBenchmark {
+    @Param({"8", "16", "32"})
+    public int length;
+
+    private SecretKey key;
+    private byte[] tweak;
+    private String plaintext;
+    private String ciphertext;
+
+    @Setup
+    public void setup() {
+        key = new SecretKeySpec(Inputs.bytes(16, 1), "AES");
+        tweak = Inputs.bytes(8, 2);
+        plaintext = Inputs.symbols(RadixEncoders.BASE10, length, 3);
+        ciphertext = FFX.encrypt(key, tweak, plaintext);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return FFX.encrypt(key, tweak, plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return FFX.decrypt(key, tweak, ciphertext);
+    }
+}
@@ -0,0 +1,47 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.kdf.HMACKDF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SP 800-108 counter mode key derivation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HmacKdfBenchmark {
+    private byte[] key;
+    private byte[] label;
+    private byte[] context;
+
+    @Setup
+    public void setup() {
+        key = Inputs.bytes(64, 1);
+        label = "benchmark".getBytes();
+        context = Inputs.bytes(32, 2);
+    }
+
+    @Benchmark
+    public byte[] deriveKeyHmac512() throws Exception {
+        return HMACKDF.deriveKeyHmac512(key, context);
+    }
+
+    @Benchmark
+    public byte[] deriveKey256() throws Exception {
+        return HMACKDF.deriveKey(key, label, context, (short) 256);
+    }
+}
@@ -0,0 +1,58 @@
+package com.johnhite.crypto.benchmarks;
+
+import com.johnhite.crypto.ffx.RadixEncoders;
+import com.johnhite.crypto.ffx.RadixEncoding;
+
+import java.util.Random;
+
+/**
+ * Deterministic benchmark inputs, so runs on different builds measure the same data.
+ */
+final class Inputs {
+
+    private Inputs() {}
+
+    static RadixEncoding encoding(String name) {
+        switch (name) {
+            case "BASE10":
+                return RadixEncoders.BASE10;
+            case "BASE16":
+                return RadixEncoders.BASE16;
+            case "BASE36":
+                return RadixEncoders.BASE36;
+            case "ASCII_PRINTABLE":
+                return RadixEncoders.ASCII_PRINTABLE;
+            default:
+                throw new IllegalArgumentException("Unknown radix encoding " + name);
+        }
+    }
+
+    static byte[] bytes(int length, long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    static String symbols(RadixEncoding base, int length, long seed) {
+        final Random rand = new Random(seed);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(base.getChar(rand.nextInt((int) base.getRadix())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Bytes with a skewed, text like distribution: most bytes are drawn from a small alphabet
+     * so an order-0 model has something to compress.
+     */
+    static byte[] text(int length, long seed) {
+        final Random rand = new Random(seed);
+        final byte[] alphabet = "etaoin shrdlu".getBytes();
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = rand.nextInt(8) == 0 ? (byte) rand.nextInt(256) : alphabet[rand.nextInt(alphabet.length)];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,223 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Single pass adaptive order-0 model.
+ *
+ * Symbol frequencies start at 1 and grow by INCREMENT each time a symbol is coded. The counts
+ * are held in a Fenwick tree, so cumulative counts and the symbol for a count are both found in
+ * O(log n). When the total passes maxScale every count is halved, which keeps the scale within
+ * what the coder accepts and lets the model follow changes in the input.
+ *
+ * The encoder and decoder must make the same sequence of calls: getSymbol then update for each
+ * symbol coded, or next() on the encoder side and getEntryFromCount on the decoder side, both of
+ * which update the model themselves.
+ */
+public class AdaptiveModeler implements Modeler, ByteModel, Iterator<ArithmeticCoder.Symbol> {
+    public static final int INCREMENT = 24;
+    //the largest scale the 16 bit ArithmeticCoder can code
+    public static final int DEFAULT_MAX_SCALE = 1 << 14;
+
+    private final int symbols;
+    private final int maxScale;
+    //tree[i] holds the sum of freq over (i - lowbit(i), i], 1 based
+    private final int[] tree;
+    private final int[] freq;
+    private final int topBit;
+    private int total;
+
+    private final InputStream data;
+    private int nextByte = -2;
+    private int bytesProcessed = 0;
+
+    /**
+     * A byte model for decoding, or for encoding with getSymbol and update.
+     */
+    public AdaptiveModeler() {
+        this(256, DEFAULT_MAX_SCALE);
+    }
+
+    /**
+     * @param symbols alphabet size, symbols are 0 to symbols - 1
+     * @param maxScale the largest total count, at least twice symbols
+     */
+    public AdaptiveModeler(int symbols, int maxScale) {
+        this(symbols, maxScale, null);
+    }
+
+    /**
+     * A byte model iterating over the symbols of in.
+     */
+    public AdaptiveModeler(InputStream in) {
+        this(256, DEFAULT_MAX_SCALE, in);
+    }
+
+    private AdaptiveModeler(int symbols, int maxScale, InputStream in) {
+        if (symbols < 1 || maxScale < 2 * symbols) {
+            throw new IllegalArgumentException("maxScale must be at least twice the number of symbols");
+        }
+        this.symbols = symbols;
+        this.maxScale = maxScale;
+        this.tree = new int[symbols + 1];
+        this.freq = new int[symbols];
+        this.topBit = Integer.highestOneBit(symbols);
+        this.data = in;
+        reset();
+    }
+
+    /**
+     * Returns every count to 1.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < symbols; i++) {
+            freq[i] = 1;
+        }
+        rebuild();
+        bytesProcessed = 0;
+    }
+
+    @Override
+    public void encode(int symbol, EntropyCoder coder, ArithmeticCoder.BitIO out) throws IOException {
+        final int low = getLowCount(symbol);
+        coder.encodeSymbol(low, low + freq[symbol], total, out);
+        update(symbol);
+    }
+
+    @Override
+    public int decode(EntropyCoder coder, ArithmeticCoder.BitIO in) throws IOException {
+        final int symbol = getSymbolFromCount(coder.getCurrentCount(total));
+        final int low = getLowCount(symbol);
+        coder.removeSymbolFromStream(low, low + freq[symbol], total, in);
+        update(symbol);
+        return symbol;
+    }
+
+    public int getScale() {
+        return total;
+    }
+
+    /**
+     * Cumulative count of the symbols below symbol.
+     */
+    public int getLowCount(int symbol) {
+        int sum = 0;
+        for (int i = symbol; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    public ArithmeticCoder.Symbol getSymbol(int symbol) {
+        final int low = getLowCount(symbol);
+        return new ArithmeticCoder.Symbol(low, low + freq[symbol], total);
+    }
+
+    /**
+     * Returns the symbol whose range [low, high) holds count.
+     */
+    public int getSymbolFromCount(int count) {
+        int pos = 0;
+        for (int step = topBit; step > 0; step >>= 1) {
+            final int next = pos + step;
+            if (next <= symbols && tree[next] <= count) {
+                pos = next;
+                count -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Counts one more occurrence of symbol.
+     */
+    public void update(int symbol) {
+        freq[symbol] += INCREMENT;
+        total += INCREMENT;
+        if (total > maxScale) {
+            //halving rounds up, so a small maxScale may need more than one pass
+            do {
+                for (int i = 0; i < symbols; i++) {
+                    freq[i] = (freq[i] + 1) >>> 1;
+                }
+                rebuild();
+            } while (total > maxScale);
+            return;
+        }
+        for (int i = symbol + 1; i <= symbols; i += i & -i) {
+            tree[i] += INCREMENT;
+        }
+    }
+
+    //O(n) construction of the tree from freq
+    private void rebuild() {
+        total = 0;
+        for (int i = 1; i <= symbols; i++) {
+            tree[i] = freq[i - 1];
+            total += freq[i - 1];
+        }
+        for (int i = 1; i <= symbols; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= symbols) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextByte == -2) {
+            try {
+                nextByte = data.read();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read next symbol", e);
+            }
+        }
+        return nextByte >= 0;
+    }
+
+    @Override
+    public ArithmeticCoder.Symbol next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final ArithmeticCoder.Symbol s = getSymbol(nextByte);
+        update(nextByte);
+        nextByte = -2;
+        bytesProcessed++;
+        return s;
+    }
+
+    /**
+     * Decodes the byte for count and updates the model with it.
+     */
+    @Override
+    public Map.Entry<Byte, ArithmeticCoder.Symbol> getEntryFromCount(int count) {
+        final int symbol = getSymbolFromCount(count);
+        final ArithmeticCoder.Symbol s = getSymbol(symbol);
+        update(symbol);
+        bytesProcessed++;
+        return new AbstractMap.SimpleImmutableEntry<>((byte) symbol, s);
+    }
+
+    @Override
+    public int getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    @Override
+    public int getBytesOutput() {
+        return 0;
+    }
+
+    @Override
+    public Iterator<ArithmeticCoder.Symbol> iterator() {
+        return this;
+    }
+}
@@ -12,13 +12,13 @@ import java.util.Random;
 /**
  * Based on https://marknelson.us/posts/1991/02/01/arithmetic-coding-statistical-modeling-data-compression.html
  */
-public class ArithmeticCoder {
+public class ArithmeticCoder implements EntropyCoder {
     private int code = 0;
     private int low = 0;
     private int high = 0xFFFF;
     private long underflowBits;
 
-    private ArithmeticCoder() {
+    public ArithmeticCoder() {
 
     }
 
@@ -28,10 +28,10 @@ public class ArithmeticCoder {
         high = 0xFFFF;
     }
 
-    public void encodeSymbol(Symbol s, BitIO stream) throws IOException {
+    public void encodeSymbol(int lowCount, int highCount, int scale, BitIO stream) throws IOException {
         long range = (long)(high - low)+1;
-        high = (int)((long)low + (range * s.highCount) / (long)s.scale - 1L);
-        low = (int)((long)low + (range * s.lowCount) / (long)s.scale);
+        high = (int)((long)low + (range * highCount) / (long)scale - 1L);
+        low = (int)((long)low + (range * lowCount) / (long)scale);
         //System.out.println("encoding symbol " + s);
 
         for(;;) {
@@ -39,10 +39,9 @@ public class ArithmeticCoder {
             if ((high & 0x8000) == (low & 0x8000)) {
                 stream.outputBit(high  & 0x8000);
                 //System.out.println("\toutput bit: " + (high & 0x8000));
-                while (underflowBits > 0) {
-                    stream.outputBit(~high & 0x8000);
-                    //System.out.println("\toutput underflow bit: " + (~high & 0x8000));
-                    underflowBits--;
+                if (underflowBits > 0) {
+                    stream.writeRepeated(~high & 0x8000, underflowBits);
+                    underflowBits = 0;
                 }
             }
             else if ((low & 0x4000) == 0x4000 && (high & 0x4000) == 0) { // (low & 0x4000) == 0x4000 && (high & 0x4000) == 0 ??? //(low & 0x4000)  != (high & 0x4000)
@@ -63,36 +62,31 @@ public class ArithmeticCoder {
     public void flushEncoder(BitIO stream) throws IOException {
         stream.outputBit(low & 0x4000);
         //System.out.println("\toutput final bit: " + (low & 0x4000));
-        while(underflowBits > 0) {
-            stream.outputBit(~low & 0x4000);
-           // System.out.println("\toutput final underflow bit: " + (~low & 0x4000));
-            underflowBits--;
-        }
+        //one more than the pending underflow bits, so that code lands inside [low, high]
+        //whatever bits the decoder reads past the end
+        stream.writeRepeated(~low & 0x4000, underflowBits + 1);
+        underflowBits = 0;
     }
 
     public void initializeDecoder(BitIO stream) throws IOException {
-        code = 0;
-        for (int i = 0; i < 16; i++) {
-            code <<= 1;
-            code += stream.inputBit();
-        }
+        code = stream.readBits(16);
         low = 0;
         high = 0xffff;
     }
 
-    public int getCurrentCount(Symbol s) {
+    public int getCurrentCount(int scale) {
         long range = (long)(high - low) +1;
-        int count = (int)(((long)(code - low +1)*(long)s.scale - 1)/ range);
+        int count = (int)(((long)(code - low +1)*(long)scale - 1)/ range);
         if (count < 0) {
             System.out.println("on noes!");
         }
         return count;
     }
 
-    public void removeSymbolFromStream(Symbol s, BitIO stream) throws IOException {
+    public void removeSymbolFromStream(int lowCount, int highCount, int scale, BitIO stream) throws IOException {
         long range = (long)(high - low) + 1;
-        high = (int)((long)low + (range * s.highCount) / (long)s.scale -1);
-        low = (int)((long)low + (range * s.lowCount) / (long)s.scale);
+        high = (int)((long)low + (range * highCount) / (long)scale -1);
+        low = (int)((long)low + (range * lowCount) / (long)scale);
         for (;;) {
             if ((high & 0x8000) == (low & 0x8000)) {
             }
@@ -137,53 +131,150 @@ public class ArithmeticCoder {
         }
     }
 
+    /**
+     * Bit level reader or writer over a stream, most significant bit first.
+     *
+     * Bits are packed into a 64 bit register and moved to and from the stream through an 8KB
+     * byte[] buffer, so the stream only sees bulk reads and writes. A reader may therefore consume
+     * up to 8KB past the last bit it returns. Past the end of the input every bit reads as 1.
+     * A writer must be flushed to write out its buffered bits.
+     */
     public static final class BitIO {
+        private static final int BUFFER_SIZE = 8192;
         private final InputStream in;
         private final OutputStream out;
-        private byte currentByte;
-        int mask;
-
-        int bitsLeft =0;
-        int bytesLeft =1;
-        int pastEof = 0;
-
-        private BitIO(InputStream in) {
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        //buffer[position, limit) holds unread input, buffer[0, position) unwritten output
+        private int position = 0;
+        private int limit = 0;
+        //the low bitCount bits of bits are pending, the next bit to read or write at the top
+        private long bits = 0;
+        private int bitCount = 0;
+
+        public BitIO(InputStream in) {
             this.in = in;
             this.out = null;
         }
-        private BitIO(OutputStream out) {
+        public BitIO(OutputStream out) {
             this.in = null;
             this.out = out;
-            mask = 0x80;
-            currentByte = 0;
         }
 
         public void outputBit(int bit) throws IOException {
-            if (bit != 0) {
-                currentByte |= mask;
+            bits = (bits << 1) | (bit != 0 ? 1 : 0);
+            if (++bitCount == 32) {
+                drain();
+            }
+        }
+
+        /**
+         * Writes the low count bits of value, most significant first.
+         *
+         * @param count 0 to 32
+         */
+        public void writeBits(int value, int count) throws IOException {
+            if (count == 0) {
+                return;
             }
-            mask >>= 1;
-            if (mask == 0) {
-                mask = 0x80;
-                out.write((int)currentByte);
-                currentByte = 0;
+            bits = (bits << count) | ((value & 0xFFFFFFFFL) & (-1L >>> (64 - count)));
+            bitCount += count;
+            if (bitCount >= 32) {
+                drain();
             }
         }
 
+        /**
+         * Writes count copies of bit.
+         */
+        public void writeRepeated(int bit, long count) throws IOException {
+            final int value = bit != 0 ? -1 : 0;
+            while (count >= 32) {
+                writeBits(value, 32);
+                count -= 32;
+            }
+            writeBits(value, (int) count);
+        }
+
+        /**
+         * Writes the buffered bits to the stream, padding the last byte with zeros.
+         */
         public void flush() throws IOException {
-            if (mask != 0x80)
-                out.write((int)currentByte);
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                putByte((int) (bits >>> bitCount));
+            }
+            if (bitCount > 0) {
+                putByte((int) (bits << (8 - bitCount)));
+                bitCount = 0;
+            }
+            out.write(buffer, 0, position);
+            position = 0;
         }
 
         public int inputBit() throws IOException {
-            if (bitsLeft == 0) {
-                bitsLeft = 8;
-                currentByte = (byte)in.read();
+            if (bitCount == 0) {
+                fill();
             }
-            bitsLeft--;
-            return (currentByte >> bitsLeft) & 1;
+            bitCount--;
+            return (int) (bits >>> bitCount) & 1;
         }
 
+        /**
+         * Reads count bits, most significant first.
+         *
+         * @param count 0 to 32
+         */
+        public int readBits(int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (bitCount < count) {
+                fill();
+            }
+            bitCount -= count;
+            return (int) ((bits >>> bitCount) & (-1L >>> (64 - count)));
+        }
+
+        //moves the top 32 of 32 to 63 pending bits to the buffer
+        private void drain() throws IOException {
+            if (position > BUFFER_SIZE - 4) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            final int word = (int) (bits >>> (bitCount - 32));
+            buffer[position] = (byte) (word >>> 24);
+            buffer[position + 1] = (byte) (word >>> 16);
+            buffer[position + 2] = (byte) (word >>> 8);
+            buffer[position + 3] = (byte) word;
+            position += 4;
+            bitCount -= 32;
+        }
+
+        private void putByte(int b) throws IOException {
+            if (position == BUFFER_SIZE) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        //tops the register up to at least 57 bits
+        private void fill() throws IOException {
+            while (bitCount <= 56) {
+                if (position == limit) {
+                    position = 0;
+                    limit = Math.max(in.read(buffer, 0, BUFFER_SIZE), 0);
+                    if (limit == 0) {
+                        //past the end of the input
+                        bits = (bits << 8) | 0xFF;
+                        bitCount += 8;
+                        continue;
+                    }
+                }
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+                bitCount += 8;
+            }
+        }
     }
     public static void main(String... args) throws IOException {
         int h = 0xBFFF;
@@ -223,7 +314,7 @@ public class ArithmeticCoder {
         if (compOut.exists()) compOut.delete();
         if (expOut.exists()) expOut.delete();
 
-        Modeler modeler = new Modeler8B("e:\\projects\\crypto\\data-compression.mhtml");
+        Modeler8B modeler = new Modeler8B("e:\\projects\\crypto\\data-compression.mhtml");
 
         //Set up compression and output
 
@@ -255,9 +346,8 @@ public class ArithmeticCoder {
         int expandedBytes = modeler.getBytesProcessed();
         for (int i=0; i< expandedBytes; i++) {
             int count = coder.getCurrentCount(symScale);
-            Map.Entry<Byte, ArithmeticCoder.Symbol> entry = modeler.getEntryFromCount(count);
-            coder.removeSymbolFromStream(entry.getValue(), inStream);
-            int low = entry.getKey();
+            int low = modeler.getSymbolFromCount(count);
+            coder.removeSymbolFromStream(modeler.getSymbol(low), inStream);
 
             /*count = coder.getCurrentCount(symScale);
             entry = modeler.getEntryFromCount(count);
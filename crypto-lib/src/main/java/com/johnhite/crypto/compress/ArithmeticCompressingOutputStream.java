@@ -0,0 +1,130 @@
+package com.johnhite.crypto.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses everything written to it, in the format of CompressedFormat. Bytes are coded as
+ * they are written; only the compressed form of the current block is held in memory.
+ *
+ * Chain onto a ChaChaOutputStream to compress then encrypt in one pass.
+ */
+public class ArithmeticCompressingOutputStream extends FilterOutputStream {
+    private final CompressedFormat format;
+    private final BlockCodec codec;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private final ArithmeticCoder.BitIO bits = new ArithmeticCoder.BitIO(block);
+    private final byte[] blockHeader = new byte[CompressedFormat.BLOCK_HEADER_SIZE];
+    private int blockLength = 0;
+    private boolean headerWritten = false;
+    private boolean finished = false;
+
+    /**
+     * Range coder, order 4 PPM, 1MB blocks.
+     */
+    public ArithmeticCompressingOutputStream(OutputStream out) {
+        this(out, Engine.RANGE, CompressedFormat.DEFAULT_ORDER, CompressedFormat.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param order 0 for an order-0 model, 1 to 8 for PPM of that order, or the longest context
+     *              mixed by MIXING, at most 6
+     * @param blockSize uncompressed bytes per block, at most 64MB
+     */
+    public ArithmeticCompressingOutputStream(OutputStream out, Engine engine, int order, int blockSize) {
+        super(out);
+        this.format = new CompressedFormat(engine, order, blockSize);
+        this.codec = format.newCodec();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (blockLength == 0) {
+            codec.initializeEncoder();
+        }
+        codec.encode(b & 0xFF, bits);
+        if (++blockLength == format.blockSize) {
+            endBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len < 0 || off < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < len; i++) {
+            write(b[off + i]);
+        }
+    }
+
+    /**
+     * Ends the current block, so everything written so far can be decompressed, and flushes the
+     * underlying stream. Frequent flushes cost compression.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        endBlock();
+        out.flush();
+    }
+
+    /**
+     * Writes the last block and the end marker without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        endBlock();
+        writeHeader();
+        //end marker
+        for (int i = 0; i < 4; i++) {
+            blockHeader[i] = 0;
+        }
+        out.write(blockHeader, 0, 4);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void endBlock() throws IOException {
+        writeHeader();
+        if (blockLength == 0) {
+            return;
+        }
+        codec.encode(ModelerPPM.END, bits);
+        codec.flushEncoder(bits);
+        bits.flush();
+        CompressedFormat.putInt(blockHeader, 0, block.size());
+        CompressedFormat.putInt(blockHeader, 4, blockLength);
+        out.write(blockHeader);
+        block.writeTo(out);
+        block.reset();
+        blockLength = 0;
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+        out.write(format.header());
+        headerWritten = true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream finished");
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.johnhite.crypto.compress;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compressed files whose blocks are coded on all cores and can be read in any order.
+ *
+ * The file is a complete CompressedFormat stream, so ArithmeticDecompressingInputStream reads it
+ * front to back, followed by an index of where each block starts:
+ *
+ *   index:   block count (4 bytes) || uncompressed length (8 bytes) || block offsets (8 bytes each)
+ *   trailer: index offset (8 bytes) || "ACZI"
+ *
+ * Every block but the last holds exactly block size bytes, so the block holding any position is
+ * known without reading the others. An open container is safe to read from any thread.
+ */
+public final class ArithmeticContainer implements Closeable {
+    private static final byte[] INDEX_MAGIC = {'A', 'C', 'Z', 'I'};
+    private static final int TRAILER_SIZE = 8 + INDEX_MAGIC.length;
+
+    private final FileChannel channel;
+    private final CompressedFormat format;
+    private final long length;
+    private final long[] offsets;
+
+    private ArithmeticContainer(FileChannel channel) throws IOException {
+        this.channel = channel;
+        final long size = channel.size();
+        if (size < CompressedFormat.HEADER_SIZE + 4 + TRAILER_SIZE) {
+            throw new IOException("Not a compressed container");
+        }
+        this.format = CompressedFormat.parse(read(0, CompressedFormat.HEADER_SIZE).array());
+        final ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+        final long indexOffset = trailer.getLong();
+        final byte[] magic = new byte[INDEX_MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, INDEX_MAGIC) || indexOffset < CompressedFormat.HEADER_SIZE || indexOffset > size - TRAILER_SIZE - 12) {
+            throw new IOException("Compressed container has no index");
+        }
+        final ByteBuffer counts = read(indexOffset, 12);
+        final int blocks = counts.getInt();
+        this.length = counts.getLong();
+        if (blocks < 0 || 12 + 8L * blocks != size - TRAILER_SIZE - indexOffset
+                || length < 0 || (length + format.blockSize - 1) / format.blockSize != blocks) {
+            throw new IOException("Corrupt compressed container index");
+        }
+        final ByteBuffer index = read(indexOffset + 12, 8 * blocks);
+        this.offsets = new long[blocks];
+        for (int i = 0; i < blocks; i++) {
+            offsets[i] = index.getLong();
+            if (offsets[i] < CompressedFormat.HEADER_SIZE || offsets[i] > indexOffset - CompressedFormat.BLOCK_HEADER_SIZE) {
+                throw new IOException("Corrupt compressed container index");
+            }
+        }
+    }
+
+    public static ArithmeticContainer open(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ArithmeticContainer(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Compresses in to out on the common ForkJoinPool with the range coder, order 4 PPM and 1MB
+     * blocks. out is created or replaced.
+     */
+    public static void compress(Path in, Path out) throws IOException {
+        compress(in, out, Engine.RANGE, CompressedFormat.DEFAULT_ORDER, CompressedFormat.DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param order 0 for an order-0 model, 1 to 8 for PPM of that order, or the longest context
+     *              mixed by MIXING, at most 6
+     * @param blockSize uncompressed bytes per block, at most 64MB
+     */
+    public static void compress(Path in, Path out, Engine engine, int order, int blockSize, ForkJoinPool pool) throws IOException {
+        final CompressedFormat format = new CompressedFormat(engine, order, blockSize);
+        if (Files.exists(out) && Files.isSameFile(in, out)) {
+            throw new IllegalArgumentException("Input and output must be different files");
+        }
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final long length = src.size();
+            final long blockCount = (length + blockSize - 1) / blockSize;
+            if (blockCount > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many blocks, use a larger block size");
+            }
+            final long[] offsets = new long[(int) blockCount];
+            writeFully(dst, ByteBuffer.wrap(format.header()));
+            //a few blocks per thread at a time, so only those are held in memory
+            final int batch = 2 * pool.getParallelism();
+            final byte[][] compressed = new byte[batch][];
+            for (int first = 0; first < blockCount; first += batch) {
+                final int base = first;
+                final int count = (int) Math.min(batch, blockCount - first);
+                invoke(pool, new BlockTask(count, i -> compressed[i] = compressBlock(format, src, length, base + i)));
+                for (int i = 0; i < count; i++) {
+                    offsets[first + i] = dst.position();
+                    writeFully(dst, ByteBuffer.wrap(compressed[i]));
+                    compressed[i] = null;
+                }
+            }
+            //end of the stream, then the index
+            final long indexOffset = dst.position() + 4;
+            final ByteBuffer index = ByteBuffer.allocate(4 + 12 + 8 * offsets.length + TRAILER_SIZE);
+            index.putInt(0).putInt(offsets.length).putLong(length);
+            for (long offset : offsets) {
+                index.putLong(offset);
+            }
+            index.putLong(indexOffset).put(INDEX_MAGIC);
+            index.flip();
+            writeFully(dst, index);
+        }
+    }
+
+    /**
+     * Decompresses in to out on the common ForkJoinPool. out is created or replaced.
+     */
+    public static void decompress(Path in, Path out) throws IOException {
+        decompress(in, out, ForkJoinPool.commonPool());
+    }
+
+    public static void decompress(Path in, Path out, ForkJoinPool pool) throws IOException {
+        if (Files.exists(out) && Files.isSameFile(in, out)) {
+            throw new IllegalArgumentException("Input and output must be different files");
+        }
+        try (ArithmeticContainer container = open(in);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (container.length() == 0) {
+                return;
+            }
+            //size the output up front so workers never extend the file concurrently
+            dst.write(ByteBuffer.allocate(1), container.length() - 1);
+            invoke(pool, new BlockTask(container.getBlockCount(), i -> {
+                final byte[] block = container.readBlock(i);
+                writeFully(dst, ByteBuffer.wrap(block), (long) i * container.getBlockSize());
+            }));
+        }
+    }
+
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    public int getBlockSize() {
+        return format.blockSize;
+    }
+
+    /**
+     * The uncompressed length.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Decompresses block i on its own.
+     */
+    public byte[] readBlock(int i) throws IOException {
+        if (i < 0 || i >= offsets.length) {
+            throw new IndexOutOfBoundsException("No block " + i);
+        }
+        final ByteBuffer blockHeader = read(offsets[i], CompressedFormat.BLOCK_HEADER_SIZE);
+        final int compressedLength = blockHeader.getInt();
+        final int blockLength = blockHeader.getInt();
+        final int expected = (int) Math.min(format.blockSize, length - (long) i * format.blockSize);
+        if (blockLength != expected || compressedLength < 1 || compressedLength > format.maxCompressedBlock()) {
+            throw new IOException("Corrupt compressed block header");
+        }
+        final byte[] compressed = read(offsets[i] + CompressedFormat.BLOCK_HEADER_SIZE, compressedLength).array();
+        final byte[] block = new byte[blockLength];
+        format.decodeBlock(format.newCodec(), compressed, 0, compressedLength, block, 0, blockLength);
+        return block;
+    }
+
+    /**
+     * Reads up to len bytes from position of the uncompressed data, decoding only the blocks
+     * they lie in.
+     *
+     * @return the bytes read, -1 if position is at or past the end
+     */
+    public int read(long position, byte[] b, int off, int len) throws IOException {
+        if (len < 0 || off < 0 || off > b.length - len || position < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (position >= length) {
+            return -1;
+        }
+        len = (int) Math.min(len, length - position);
+        int done = 0;
+        while (done < len) {
+            final long p = position + done;
+            final int i = (int) (p / format.blockSize);
+            final int blockOff = (int) (p % format.blockSize);
+            final byte[] block = readBlock(i);
+            final int n = Math.min(len - done, block.length - blockOff);
+            System.arraycopy(block, blockOff, b, off + done, n);
+            done += n;
+        }
+        return len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static byte[] compressBlock(CompressedFormat format, FileChannel src, long length, long i) throws IOException {
+        final long offset = i * format.blockSize;
+        final int len = (int) Math.min(format.blockSize, length - offset);
+        final ByteBuffer data = ByteBuffer.allocate(len);
+        readFully(src, data, offset);
+        return format.encodeBlock(format.newCodec(), data.array(), 0, len);
+    }
+
+    private ByteBuffer read(long position, int len) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(len);
+        readFully(channel, buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Truncated compressed container");
+            }
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void invoke(ForkJoinPool pool, BlockTask task) throws IOException {
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private interface BlockAction {
+        void run(int i) throws IOException;
+    }
+
+    /**
+     * Runs action for blocks [from, to) by splitting the range in half until a single block is left.
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private final BlockAction action;
+        private final int from;
+        private final int to;
+
+        BlockTask(int count, BlockAction action) {
+            this(action, 0, count);
+        }
+
+        private BlockTask(BlockAction action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new BlockTask(action, from, mid), new BlockTask(action, mid, to));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            try {
+                action.run(from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
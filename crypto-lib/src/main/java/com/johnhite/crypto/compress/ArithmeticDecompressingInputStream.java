@@ -0,0 +1,131 @@
+package com.johnhite.crypto.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by ArithmeticCompressingOutputStream, whose header carries the coder,
+ * model and block size. One compressed block is held in memory at a time.
+ */
+public class ArithmeticDecompressingInputStream extends FilterInputStream {
+    private final DataInputStream data;
+    private final CompressedFormat format;
+    private final BlockCodec codec;
+    private byte[] block = new byte[0];
+    private ArithmeticCoder.BitIO bits;
+    //bytes of the current block still to decode
+    private int remaining = 0;
+    private boolean eof = false;
+
+    public ArithmeticDecompressingInputStream(InputStream in) throws IOException {
+        super(in);
+        this.data = new DataInputStream(in);
+        final byte[] header = new byte[CompressedFormat.HEADER_SIZE];
+        try {
+            data.readFully(header);
+        } catch (EOFException e) {
+            throw new IOException("Not a compressed stream", e);
+        }
+        format = CompressedFormat.parse(header);
+        codec = format.newCodec();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0 && !nextBlock()) {
+            return -1;
+        }
+        return decode();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len < 0 || off < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining == 0 && !nextBlock()) {
+            return -1;
+        }
+        final int n = Math.min(len, remaining);
+        for (int i = 0; i < n; i++) {
+            b[off + i] = (byte) decode();
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * The bytes left in the current block.
+     */
+    @Override
+    public int available() {
+        return remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private int decode() throws IOException {
+        final int b = codec.decode(bits);
+        if (b == ModelerPPM.END) {
+            throw new IOException("Compressed block ended early");
+        }
+        if (--remaining == 0 && codec.decode(bits) != ModelerPPM.END) {
+            throw new IOException("Compressed block is longer than its header says");
+        }
+        return b;
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (eof) {
+            return false;
+        }
+        try {
+            final int compressed = data.readInt();
+            if (compressed == 0) {
+                eof = true;
+                return false;
+            }
+            final int length = data.readInt();
+            if (compressed < 0 || compressed > format.maxCompressedBlock() || length < 1 || length > format.blockSize) {
+                throw new IOException("Corrupt compressed block header");
+            }
+            if (block.length < compressed) {
+                block = new byte[compressed];
+            }
+            data.readFully(block, 0, compressed);
+            bits = new ArithmeticCoder.BitIO(new ByteArrayInputStream(block, 0, compressed));
+            codec.initializeDecoder(bits);
+            remaining = length;
+            return true;
+        } catch (EOFException e) {
+            throw new IOException("Truncated compressed stream", e);
+        }
+    }
+}
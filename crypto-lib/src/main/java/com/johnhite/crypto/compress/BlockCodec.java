@@ -0,0 +1,15 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+
+/**
+ * Codes the symbols of one block of a compressed stream, bytes then END, whatever pairs the
+ * coder and model. Both initialize methods start from a fresh model.
+ */
+interface BlockCodec {
+    void initializeEncoder();
+    void encode(int symbol, ArithmeticCoder.BitIO out) throws IOException;
+    void flushEncoder(ArithmeticCoder.BitIO out) throws IOException;
+    void initializeDecoder(ArithmeticCoder.BitIO in) throws IOException;
+    int decode(ArithmeticCoder.BitIO in) throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+
+/**
+ * An adaptive model that codes whole symbols through an EntropyCoder, for the compressed
+ * streams. Encoder and decoder models stay in step by seeing the same symbols.
+ */
+interface ByteModel {
+    void encode(int symbol, EntropyCoder coder, ArithmeticCoder.BitIO out) throws IOException;
+    int decode(EntropyCoder coder, ArithmeticCoder.BitIO in) throws IOException;
+    /**
+     * Returns the model to its initial state.
+     */
+    void reset();
+}
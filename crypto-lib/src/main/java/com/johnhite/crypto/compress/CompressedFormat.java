@@ -0,0 +1,197 @@
+package com.johnhite.crypto.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+Layout shared by ArithmeticCompressingOutputStream, ArithmeticDecompressingInputStream and
+ArithmeticContainer.
+
+  header: magic "ACZ" || version (1 byte) || coder (1 byte) || order (1 byte) || block size (4 bytes)
+  blocks: compressed length (4 bytes) || uncompressed length (4 bytes) || compressed bytes
+  end:    compressed length 0
+
+All integers are big endian. Each block codes up to block size bytes followed by END, with a
+fresh coder and model, so blocks can be decoded on their own and memory stays bounded whatever
+the stream length. With the ARITHMETIC and RANGE coders order 0 selects the Fenwick tree
+AdaptiveModeler and orders 1 to 8 select ModelerPPM. MIXING codes bits with ContextMixingCoder,
+mixing every order up to the one given, at most 6.
+ */
+final class CompressedFormat {
+    static final byte[] MAGIC = {'A', 'C', 'Z'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 3 + 4;
+    static final int BLOCK_HEADER_SIZE = 8;
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    static final int DEFAULT_ORDER = ModelerPPM.DEFAULT_ORDER;
+    static final int MAX_ORDER = 8;
+
+    final Engine engine;
+    final int order;
+    final int blockSize;
+
+    CompressedFormat(Engine engine, int order, int blockSize) {
+        if (order < 0 || order > MAX_ORDER) {
+            throw new IllegalArgumentException("Order must be between 0 and " + MAX_ORDER);
+        }
+        if (engine == Engine.MIXING && order > ContextMixingCoder.MAX_ORDER) {
+            throw new IllegalArgumentException("Context mixing order must be between 0 and " + ContextMixingCoder.MAX_ORDER);
+        }
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE);
+        }
+        this.engine = engine;
+        this.order = order;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Reads the settings from a header.
+     */
+    static CompressedFormat parse(byte[] header) throws IOException {
+        if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a compressed stream");
+        }
+        if (header[3] != VERSION) {
+            throw new IOException("Unsupported compressed stream version " + header[3]);
+        }
+        final int engine = header[4];
+        final int order = header[5];
+        final int blockSize = getInt(header, 6);
+        if (engine < 0 || engine >= Engine.values().length || order < 0 || order > MAX_ORDER
+                || (engine == Engine.MIXING.ordinal() && order > ContextMixingCoder.MAX_ORDER)
+                || blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Corrupt compressed stream header");
+        }
+        return new CompressedFormat(Engine.values()[engine], order, blockSize);
+    }
+
+    byte[] header() {
+        final byte[] header = new byte[HEADER_SIZE];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[3] = VERSION;
+        header[4] = (byte) engine.ordinal();
+        header[5] = (byte) order;
+        putInt(header, 6, blockSize);
+        return header;
+    }
+
+    BlockCodec newCodec() {
+        if (engine == Engine.MIXING) {
+            //a block touches at most 8 counters per order per byte, small blocks get small tables
+            final long counters = ((long) blockSize + 1) * 8 * Math.max(1, order);
+            final int bits = 64 - Long.numberOfLeadingZeros(counters);
+            return new ContextMixingCoder(order, Math.max(12, Math.min(ContextMixingCoder.DEFAULT_TABLE_BITS, bits)));
+        }
+        final EntropyCoder coder = engine == Engine.RANGE ? new RangeCoder() : new ArithmeticCoder();
+        return new ModelCodec(coder, newModel());
+    }
+
+    private ByteModel newModel() {
+        if (order == 0) {
+            return new AdaptiveModeler(ModelerPPM.END + 1, AdaptiveModeler.DEFAULT_MAX_SCALE);
+        }
+        //a block adds at most order nodes per symbol, small blocks never need the default pool
+        final long nodes = Math.max(64, Math.min(ModelerPPM.DEFAULT_MAX_NODES, ((long) blockSize + 1) * order + 2));
+        return new ModelerPPM(null, order, (int) nodes);
+    }
+
+    /**
+     * The largest compressed block a decoder accepts, far above what any block compresses to.
+     */
+    int maxCompressedBlock() {
+        return (int) Math.min(Integer.MAX_VALUE - 8, 2L * blockSize + 64 * 1024);
+    }
+
+    /**
+     * Compresses data[off, off + len) into a block, block header included.
+     */
+    byte[] encodeBlock(BlockCodec codec, byte[] data, int off, int len) throws IOException {
+        final ByteArrayOutputStream block = new ByteArrayOutputStream(len / 2 + 64);
+        block.write(new byte[BLOCK_HEADER_SIZE]);
+        final ArithmeticCoder.BitIO bits = new ArithmeticCoder.BitIO(block);
+        codec.initializeEncoder();
+        for (int i = 0; i < len; i++) {
+            codec.encode(data[off + i] & 0xFF, bits);
+        }
+        codec.encode(ModelerPPM.END, bits);
+        codec.flushEncoder(bits);
+        bits.flush();
+        final byte[] compressed = block.toByteArray();
+        putInt(compressed, 0, compressed.length - BLOCK_HEADER_SIZE);
+        putInt(compressed, 4, len);
+        return compressed;
+    }
+
+    /**
+     * Decompresses the len bytes of a block from compressed[off, off + compressedLength) to out.
+     */
+    void decodeBlock(BlockCodec codec, byte[] compressed, int off, int compressedLength, byte[] out, int outOff, int len) throws IOException {
+        final ArithmeticCoder.BitIO bits = new ArithmeticCoder.BitIO(new ByteArrayInputStream(compressed, off, compressedLength));
+        codec.initializeDecoder(bits);
+        for (int i = 0; i < len; i++) {
+            final int b = codec.decode(bits);
+            if (b == ModelerPPM.END) {
+                throw new IOException("Compressed block ended early");
+            }
+            out[outOff + i] = (byte) b;
+        }
+        if (codec.decode(bits) != ModelerPPM.END) {
+            throw new IOException("Compressed block is longer than its header says");
+        }
+    }
+
+    static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * A ByteModel coding whole symbols through an EntropyCoder.
+     */
+    private static final class ModelCodec implements BlockCodec {
+        private final EntropyCoder coder;
+        private final ByteModel model;
+
+        ModelCodec(EntropyCoder coder, ByteModel model) {
+            this.coder = coder;
+            this.model = model;
+        }
+
+        @Override
+        public void initializeEncoder() {
+            model.reset();
+            coder.initializeEncoder();
+        }
+
+        @Override
+        public void encode(int symbol, ArithmeticCoder.BitIO out) throws IOException {
+            model.encode(symbol, coder, out);
+        }
+
+        @Override
+        public void flushEncoder(ArithmeticCoder.BitIO out) throws IOException {
+            coder.flushEncoder(out);
+        }
+
+        @Override
+        public void initializeDecoder(ArithmeticCoder.BitIO in) throws IOException {
+            model.reset();
+            coder.initializeDecoder(in);
+        }
+
+        @Override
+        public int decode(ArithmeticCoder.BitIO in) throws IOException {
+            return model.decode(coder, in);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Binary arithmetic coder with a context mixing model, in the style of lpaq.
+ *
+ * Each byte is coded as 8 bits, most significant first, preceded by one bit that marks END. The
+ * probability of every bit comes from 12 bit counters, one from an order-0 table indexed by the
+ * bits of the byte seen so far, and one per order 1 to N from a shared table indexed by a hash
+ * of the previous bytes and those bits. A logistic mixer, with a weight set per partial byte,
+ * combines them in the stretched domain and learns online. There is no cumulative frequency
+ * search; every bit costs the same whatever the alphabet.
+ *
+ * The coder is carry-less: the 32 bit interval [x1, x2] shifts out a byte whenever both ends
+ * share their top byte.
+ */
+public class ContextMixingCoder implements BlockCodec {
+    public static final int MAX_ORDER = 6;
+    public static final int DEFAULT_TABLE_BITS = 22;
+    //counter adaptation shift and mixer learning rate
+    private static final int RATE = 4;
+    private static final int LEARNING_RATE = 6;
+    private static final short[] STRETCH = new short[4096];
+    private static final short[] SQUASH = new short[4096];
+
+    static {
+        //squash(d) = 4096 / (1 + e^-d), d in 1/256 steps over -2047..2047; stretch is its inverse
+        for (int i = 0; i < 4096; i++) {
+            final int v = (int) Math.round(4096 / (1 + Math.exp(-(i - 2048) / 256.0)));
+            SQUASH[i] = (short) Math.min(4095, Math.max(1, v));
+        }
+        int pi = 0;
+        for (int d = -2047; d <= 2047; d++) {
+            final int v = squash(d);
+            for (int p = pi; p <= v; p++) {
+                STRETCH[p] = (short) d;
+            }
+            pi = v + 1;
+        }
+        for (int p = pi; p < 4096; p++) {
+            STRETCH[p] = 2047;
+        }
+    }
+
+    private final int maxOrder;
+    private final int inputs;
+    private final int tableShift;
+    private final short[] order0 = new short[256];
+    private final short[] table;
+    private final int[] weights;
+    //per bit state: table slots, stretched predictions and the mixed probability
+    private final int[] slots;
+    private final int[] stretched;
+    private final int[] hashes;
+    private int endProbability;
+    private long history;
+    private int pr;
+
+    //coder state
+    private long x1;
+    private long x2;
+    private long x;
+
+    /**
+     * @param maxOrder longest context in bytes, 0 to MAX_ORDER
+     */
+    public ContextMixingCoder(int maxOrder) {
+        this(maxOrder, DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * @param maxOrder longest context in bytes, 0 to MAX_ORDER
+     * @param tableBits log2 of the counters shared by orders 1 and up, 8 to 28
+     */
+    public ContextMixingCoder(int maxOrder, int tableBits) {
+        if (maxOrder < 0 || maxOrder > MAX_ORDER) {
+            throw new IllegalArgumentException("Context mixing order must be between 0 and " + MAX_ORDER);
+        }
+        if (tableBits < 8 || tableBits > 28) {
+            throw new IllegalArgumentException("Table bits must be between 8 and 28");
+        }
+        this.maxOrder = maxOrder;
+        this.tableShift = 32 - tableBits;
+        this.table = new short[1 << tableBits];
+        //one input per order and a bias
+        this.inputs = maxOrder + 2;
+        this.weights = new int[256 * inputs];
+        this.slots = new int[maxOrder + 1];
+        this.stretched = new int[inputs];
+        this.hashes = new int[maxOrder + 1];
+        reset();
+    }
+
+    /**
+     * Forgets everything seen so far.
+     */
+    public void reset() {
+        Arrays.fill(order0, (short) 2048);
+        Arrays.fill(table, (short) 2048);
+        Arrays.fill(weights, (1 << 16) / inputs);
+        endProbability = 2048;
+        history = 0;
+        computeHashes();
+    }
+
+    @Override
+    public void initializeEncoder() {
+        reset();
+        x1 = 0;
+        x2 = 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void encode(int symbol, ArithmeticCoder.BitIO out) throws IOException {
+        if (symbol < 0 || symbol > ModelerPPM.END) {
+            throw new IllegalArgumentException("Symbol out of range: " + symbol);
+        }
+        final int end = symbol == ModelerPPM.END ? 1 : 0;
+        encodeBit(end, endProbability, out);
+        endProbability = adapt(endProbability, end);
+        if (end == 1) {
+            return;
+        }
+        int c0 = 1;
+        for (int i = 7; i >= 0; i--) {
+            final int bit = (symbol >>> i) & 1;
+            encodeBit(bit, predict(c0), out);
+            update(c0, bit);
+            c0 = (c0 << 1) | bit;
+        }
+        endByte(symbol);
+    }
+
+    @Override
+    public void flushEncoder(ArithmeticCoder.BitIO out) throws IOException {
+        //any value in [x1, x2] decodes the same, x1 itself is the simplest
+        out.writeBits((int) x1, 32);
+    }
+
+    @Override
+    public void initializeDecoder(ArithmeticCoder.BitIO in) throws IOException {
+        reset();
+        x1 = 0;
+        x2 = 0xFFFFFFFFL;
+        x = in.readBits(32) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public int decode(ArithmeticCoder.BitIO in) throws IOException {
+        final int end = decodeBit(endProbability, in);
+        endProbability = adapt(endProbability, end);
+        if (end == 1) {
+            return ModelerPPM.END;
+        }
+        int c0 = 1;
+        while (c0 < 256) {
+            final int bit = decodeBit(predict(c0), in);
+            update(c0, bit);
+            c0 = (c0 << 1) | bit;
+        }
+        final int symbol = c0 & 0xFF;
+        endByte(symbol);
+        return symbol;
+    }
+
+    /**
+     * Probability that the next bit is 1, in 12 bits, for the partial byte c0 (a leading 1 then
+     * the bits so far).
+     */
+    private int predict(int c0) {
+        slots[0] = c0;
+        stretched[0] = STRETCH[order0[c0]];
+        for (int k = 1; k <= maxOrder; k++) {
+            slots[k] = ((hashes[k] + c0) * 0x9E3779B1) >>> tableShift;
+            stretched[k] = STRETCH[table[slots[k]]];
+        }
+        stretched[maxOrder + 1] = 256;
+        final int w = c0 * inputs;
+        long dot = 0;
+        for (int i = 0; i < inputs; i++) {
+            dot += (long) weights[w + i] * stretched[i];
+        }
+        pr = squash((int) (dot >> 16));
+        return pr;
+    }
+
+    private void update(int c0, int bit) {
+        order0[c0] = (short) adapt(order0[c0], bit);
+        for (int k = 1; k <= maxOrder; k++) {
+            table[slots[k]] = (short) adapt(table[slots[k]], bit);
+        }
+        final int err = ((bit << 12) - pr) * LEARNING_RATE;
+        final int w = c0 * inputs;
+        for (int i = 0; i < inputs; i++) {
+            weights[w + i] += (stretched[i] * err) >> 10;
+        }
+    }
+
+    private void endByte(int symbol) {
+        history = (history << 8) | symbol;
+        computeHashes();
+    }
+
+    private void computeHashes() {
+        int h = 0;
+        for (int k = 1; k <= maxOrder; k++) {
+            h = (h + (int) (history >>> (8 * (k - 1)) & 0xFF) + 1) * 0x2F0B4C3D + k;
+            //the partial byte is added to the hash, keep the low 8 bits clear for it
+            hashes[k] = h << 8;
+        }
+    }
+
+    private static int adapt(int p, int bit) {
+        p += ((bit << 12) - p) >> RATE;
+        return Math.min(4095, Math.max(1, p));
+    }
+
+    private static int squash(int d) {
+        if (d > 2047) {
+            return 4095;
+        }
+        if (d < -2047) {
+            return 1;
+        }
+        return SQUASH[d + 2048];
+    }
+
+    private void encodeBit(int bit, int p, ArithmeticCoder.BitIO out) throws IOException {
+        final long xmid = x1 + ((x2 - x1) >>> 12) * p;
+        if (bit == 1) {
+            x2 = xmid;
+        } else {
+            x1 = xmid + 1;
+        }
+        while (((x1 ^ x2) & 0xFF000000L) == 0) {
+            out.writeBits((int) (x2 >>> 24), 8);
+            x1 = (x1 << 8) & 0xFFFFFFFFL;
+            x2 = ((x2 << 8) & 0xFFFFFFFFL) | 0xFF;
+        }
+    }
+
+    private int decodeBit(int p, ArithmeticCoder.BitIO in) throws IOException {
+        final long xmid = x1 + ((x2 - x1) >>> 12) * p;
+        final int bit;
+        if (x <= xmid) {
+            bit = 1;
+            x2 = xmid;
+        } else {
+            bit = 0;
+            x1 = xmid + 1;
+        }
+        while (((x1 ^ x2) & 0xFF000000L) == 0) {
+            x1 = (x1 << 8) & 0xFFFFFFFFL;
+            x2 = ((x2 << 8) & 0xFFFFFFFFL) | 0xFF;
+            x = ((x << 8) & 0xFFFFFFFFL) | in.readBits(8);
+        }
+        return bit;
+    }
+}
@@ -0,0 +1,13 @@
+package com.johnhite.crypto.compress;
+
+/**
+ * The coder of a compressed stream.
+ */
+public enum Engine {
+    /** the 16 bit ArithmeticCoder */
+    ARITHMETIC,
+    /** the 32 bit RangeCoder */
+    RANGE,
+    /** the binary ContextMixingCoder, which brings its own model */
+    MIXING
+}
@@ -0,0 +1,38 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+
+/**
+ * Encodes symbols given as cumulative count ranges, and decodes them again. A Modeler supplies
+ * the symbols; the decoder looks them up with getCurrentCount.
+ *
+ * The range of a symbol may be given as a Symbol or as its three counts. Models that compute the
+ * counts on the fly use the int forms, which spare them a Symbol per coded symbol.
+ */
+public interface EntropyCoder {
+    void initializeEncoder();
+    void encodeSymbol(int lowCount, int highCount, int scale, ArithmeticCoder.BitIO stream) throws IOException;
+    void flushEncoder(ArithmeticCoder.BitIO stream) throws IOException;
+
+    void initializeDecoder(ArithmeticCoder.BitIO stream) throws IOException;
+    /**
+     * Returns the cumulative count of the next symbol, for a model with the given scale.
+     */
+    int getCurrentCount(int scale);
+    void removeSymbolFromStream(int lowCount, int highCount, int scale, ArithmeticCoder.BitIO stream) throws IOException;
+
+    default void encodeSymbol(ArithmeticCoder.Symbol s, ArithmeticCoder.BitIO stream) throws IOException {
+        encodeSymbol(s.lowCount, s.highCount, s.scale, stream);
+    }
+
+    /**
+     * Returns the cumulative count of the next symbol, for a symbol with the model's scale.
+     */
+    default int getCurrentCount(ArithmeticCoder.Symbol s) {
+        return getCurrentCount(s.scale);
+    }
+
+    default void removeSymbolFromStream(ArithmeticCoder.Symbol s, ArithmeticCoder.BitIO stream) throws IOException {
+        removeSymbolFromStream(s.lowCount, s.highCount, s.scale, stream);
+    }
+}
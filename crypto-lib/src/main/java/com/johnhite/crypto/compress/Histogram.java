@@ -0,0 +1,240 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Byte statistics for building static models.
+ *
+ * Order-0 histograms have 256 counts, one per byte value. Order-1 histograms have 65536, indexed
+ * by previous byte << 8 | byte, where the first byte of the input follows a 0. Inputs are split
+ * into chunks counted on a ForkJoinPool, each into its own int table, and the tables are summed
+ * as the tasks join, so no counter is shared between threads. Totals are longs, files may be
+ * larger than any int count.
+ */
+public final class Histogram {
+    //below this a chunk is counted on the calling thread
+    private static final int MIN_CHUNK = 1 << 20;
+    //files are mapped a segment at a time, well below the 2GB a mapping can hold
+    private static final long SEGMENT = 1L << 30;
+
+    private Histogram() {
+    }
+
+    public static long[] order0(byte[] data) {
+        return order0(ByteBuffer.wrap(data), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Counts the remaining bytes of data, heap or mapped, without moving its position.
+     */
+    public static long[] order0(ByteBuffer data, ForkJoinPool pool) {
+        final long[] counts = new long[256];
+        add(counts, pool.invoke(new CountTask(data, false, 0, data.position(), data.position(), data.limit(), chunkSize(data, pool))));
+        return counts;
+    }
+
+    public static long[] order0(Path file, ForkJoinPool pool) throws IOException {
+        return count(file, false, pool);
+    }
+
+    public static long[] order1(byte[] data) {
+        return order1(ByteBuffer.wrap(data), ForkJoinPool.commonPool());
+    }
+
+    public static long[] order1(ByteBuffer data, ForkJoinPool pool) {
+        final long[] counts = new long[65536];
+        add(counts, pool.invoke(new CountTask(data, true, 0, data.position(), data.position(), data.limit(), chunkSize(data, pool))));
+        return counts;
+    }
+
+    public static long[] order1(Path file, ForkJoinPool pool) throws IOException {
+        return count(file, true, pool);
+    }
+
+    /**
+     * Scales counts to frequencies summing to exactly scale. Every symbol with a count keeps a
+     * frequency of at least 1, the rounding error is taken from or given to the most frequent
+     * symbols.
+     *
+     * @param scale at least the number of symbols with a count
+     */
+    public static int[] normalize(long[] counts, int scale) {
+        long total = 0;
+        int used = 0;
+        for (long c : counts) {
+            if (c < 0) {
+                throw new IllegalArgumentException("Negative count");
+            }
+            total += c;
+            used += c > 0 ? 1 : 0;
+        }
+        if (used > scale) {
+            throw new IllegalArgumentException(used + " symbols do not fit in a scale of " + scale);
+        }
+        final int[] freq = new int[counts.length];
+        if (used == 0) {
+            return freq;
+        }
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                //floor, computed in double so huge totals cannot overflow
+                freq[i] = (int) Math.max(1, Math.min(scale, (long) ((double) counts[i] * scale / total)));
+                sum += freq[i];
+            }
+        }
+        if (sum == scale) {
+            return freq;
+        }
+        //symbols by descending count, the cheapest place to absorb the error
+        final Integer[] order = new Integer[used];
+        for (int i = 0, j = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                order[j++] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        while (sum < scale) {
+            for (int i = 0; i < used && sum < scale; i++) {
+                freq[order[i]]++;
+                sum++;
+            }
+        }
+        while (sum > scale) {
+            for (int i = 0; i < used && sum > scale; i++) {
+                if (freq[order[i]] > 1) {
+                    freq[order[i]]--;
+                    sum--;
+                }
+            }
+        }
+        return freq;
+    }
+
+    private static long[] count(Path file, boolean order1, ForkJoinPool pool) throws IOException {
+        final long[] counts = new long[order1 ? 65536 : 256];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            int previous = 0;
+            for (long offset = 0; offset < size; offset += SEGMENT) {
+                final ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT, size - offset));
+                add(counts, pool.invoke(new CountTask(segment, order1, previous, 0, 0, segment.limit(), chunkSize(segment, pool))));
+                previous = segment.get(segment.limit() - 1) & 0xFF;
+            }
+        }
+        return counts;
+    }
+
+    //a few chunks per thread so the pool can balance them
+    private static int chunkSize(ByteBuffer data, ForkJoinPool pool) {
+        return Math.max(MIN_CHUNK, data.remaining() / (4 * pool.getParallelism()) + 1);
+    }
+
+    private static void add(long[] counts, int[] chunk) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += chunk[i] & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * Counts data[from, to) by halving the range down to a chunk. The int counts of a task cannot
+     * overflow as a mapped segment is under 2^31 bytes; they are read back as unsigned.
+     */
+    private static final class CountTask extends RecursiveTask<int[]> {
+        private final ByteBuffer data;
+        private final boolean order1;
+        //the byte before data[start], for the order-1 context of the first byte
+        private final int before;
+        private final int start;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        CountTask(ByteBuffer data, boolean order1, int before, int start, int from, int to, int chunk) {
+            this.data = data;
+            this.order1 = order1;
+            this.before = before;
+            this.start = start;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > chunk) {
+                final int mid = from + (to - from) / 2;
+                final CountTask right = new CountTask(data, order1, before, start, mid, to, chunk);
+                right.fork();
+                final int[] counts = new CountTask(data, order1, before, start, from, mid, chunk).compute();
+                final int[] other = right.join();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += other[i];
+                }
+                return counts;
+            }
+            return order1 ? countOrder1() : countOrder0();
+        }
+
+        private int[] countOrder0() {
+            //four tables so runs of one byte value do not serialize on a single counter
+            final int[] counts = new int[4 * 256];
+            final byte[] buffer = new byte[Math.min(64 * 1024, Math.max(0, to - from))];
+            for (int p = from; p < to; ) {
+                final int n = read(p, buffer);
+                int i = 0;
+                for (; i + 4 <= n; i += 4) {
+                    counts[buffer[i] & 0xFF]++;
+                    counts[256 + (buffer[i + 1] & 0xFF)]++;
+                    counts[512 + (buffer[i + 2] & 0xFF)]++;
+                    counts[768 + (buffer[i + 3] & 0xFF)]++;
+                }
+                for (; i < n; i++) {
+                    counts[buffer[i] & 0xFF]++;
+                }
+                p += n;
+            }
+            final int[] merged = new int[256];
+            for (int i = 0; i < 256; i++) {
+                merged[i] = counts[i] + counts[256 + i] + counts[512 + i] + counts[768 + i];
+            }
+            return merged;
+        }
+
+        private int[] countOrder1() {
+            final int[] counts = new int[65536];
+            final byte[] buffer = new byte[Math.min(64 * 1024, Math.max(0, to - from))];
+            int previous = from == start ? before : data.get(from - 1) & 0xFF;
+            for (int p = from; p < to; ) {
+                final int n = read(p, buffer);
+                for (int i = 0; i < n; i++) {
+                    final int b = buffer[i] & 0xFF;
+                    counts[(previous << 8) | b]++;
+                    previous = b;
+                }
+                p += n;
+            }
+            return counts;
+        }
+
+        //copies data[p, p + n) into buffer, straight from the array of a heap buffer
+        private int read(int p, byte[] buffer) {
+            final int n = Math.min(buffer.length, to - p);
+            if (data.hasArray()) {
+                System.arraycopy(data.array(), data.arrayOffset() + p, buffer, 0, n);
+            } else {
+                final ByteBuffer view = data.duplicate();
+                view.limit(p + n).position(p);
+                view.get(buffer, 0, n);
+            }
+            return n;
+        }
+    }
+}
@@ -3,9 +3,13 @@ package com.johnhite.crypto.compress;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class Modeler4B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
     private String file;
@@ -14,38 +18,39 @@ public class Modeler4B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
     private int bufferCount = 0;
 
     private Map<Byte, ArithmeticCoder.Symbol> symbolTable = new HashMap<>();
+    //decoding tables: count -> symbol for counts below covered, and the Symbol and entry per symbol
+    private byte[] countToSymbol;
+    private int covered;
+    private ArithmeticCoder.Symbol[] symbols = new ArithmeticCoder.Symbol[16];
+    private Map.Entry<Byte, ArithmeticCoder.Symbol>[] entries;
     private int symbolCount;
     private int currentSymbol;
 
     public Modeler4B(String file) throws IOException {
         this.file = file;
-        FileInputStream data = new FileInputStream(file);
-        Map<Byte, Integer> stats = new HashMap<>();
-        int count = 0;
-        int read = 0;
-        while ( (read = data.read(buffer)) > 0) {
-            count += read;
-            for (int i= 0; i< read; i++) {
-                byte bl = (byte)(buffer[i] & 0x0F);
-                byte bh = (byte)((buffer[i] >>> 4) & 0x0F);
-                stats.put(bl, stats.getOrDefault(bl, 0) +1);
-                stats.put(bh, stats.getOrDefault(bh, 0) +1);
-                //stats.put(buffer[i], stats.getOrDefault(buffer[i], 0) + 1);
-            }
+        final long[] counts = Histogram.order0(Paths.get(file), ForkJoinPool.commonPool());
+        //each byte is a low and a high nibble
+        final long[] nibbles = new long[16];
+        long count = 0;
+        for (int b = 0; b < 256; b++) {
+            nibbles[b & 0x0F] += counts[b];
+            nibbles[b >>> 4] += counts[b];
+            count += counts[b];
         }
-        data.close();
-
-        symbolCount = count *2;
-        stats.forEach((k,v) -> {
-            System.out.println(k + "," + v + "," + ((double)v/(double)symbolCount));
-        });
+        //symbols, two per byte, are counted in an int
+        if (count > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("File too large to model: " + count + " bytes");
+        }
+        symbolCount = (int) count * 2;
+        final int[] freq = Histogram.normalize(nibbles, 16384);
         int lastValue = 0;
-        for (Map.Entry<Byte, Integer> e : stats.entrySet()) {
-            double prob = (double)e.getValue()/(double)symbolCount;
-            int highValue = lastValue +  (int)Math.floor(16384 * prob);
-            symbolTable.put(e.getKey(), new ArithmeticCoder.Symbol(lastValue, highValue, 16384));
-            lastValue = highValue;
+        for (int symbol = 0; symbol < 16; symbol++) {
+            if (freq[symbol] > 0) {
+                symbolTable.put((byte) symbol, new ArithmeticCoder.Symbol(lastValue, lastValue + freq[symbol], 16384));
+                lastValue += freq[symbol];
+            }
         }
+        buildTables();
     }
 
     private void openFile() throws IOException {
@@ -75,10 +80,10 @@ public class Modeler4B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
             currentSymbol++;
             if (symbolIndex % 2 == 0){
                 byte bl = (byte)(buffer[symbolIndex/2] & 0x0F);
-                return symbolTable.get(bl);
+                return symbols[bl];
             }
             byte bh = (byte)((buffer[symbolIndex/2] >>> 4) & 0x0F);
-            return symbolTable.get(bh);
+            return symbols[bh];
         }
         catch (IOException e) {
             throw new RuntimeException("Failed to read next symbol", e);
@@ -91,12 +96,39 @@ public class Modeler4B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
     }
 
     public Map.Entry<Byte, ArithmeticCoder.Symbol> getEntryFromCount(int count) {
+        return entries[getSymbolFromCount(count)];
+    }
+
+    /**
+     * Returns the symbol whose range holds count, without allocating.
+     */
+    public int getSymbolFromCount(int count) {
+        if (count < 0 || count >= covered) {
+            throw new RuntimeException("Could not decode symbol. count = " + count);
+        }
+        return countToSymbol[count] & 0xFF;
+    }
+
+    public ArithmeticCoder.Symbol getSymbol(int symbol) {
+        return symbols[symbol];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void buildTables() {
+        entries = new Map.Entry[symbols.length];
+        covered = 0;
         for (Map.Entry<Byte, ArithmeticCoder.Symbol> entry : symbolTable.entrySet()) {
-            if (count >= entry.getValue().lowCount && count < entry.getValue().highCount) {
-                return entry;
+            final int symbol = entry.getKey() & 0xFF;
+            symbols[symbol] = entry.getValue();
+            entries[symbol] = new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+            covered = Math.max(covered, entry.getValue().highCount);
+        }
+        countToSymbol = new byte[covered];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            if (symbols[symbol] != null) {
+                Arrays.fill(countToSymbol, symbols[symbol].lowCount, symbols[symbol].highCount, (byte) symbol);
             }
         }
-        throw new RuntimeException("Could not decode symbol. count = " + count);
     }
     public int getBytesProcessed() {
         return bufferCount;
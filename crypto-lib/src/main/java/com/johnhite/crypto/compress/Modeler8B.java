@@ -3,9 +3,13 @@ package com.johnhite.crypto.compress;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class Modeler8B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
     private String file;
@@ -14,40 +18,35 @@ public class Modeler8B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
     private int bufferCount = 0;
 
     private Map<Byte, ArithmeticCoder.Symbol> symbolTable = new HashMap<>();
+    //decoding tables: count -> symbol for counts below covered, and the Symbol and entry per symbol
+    private byte[] countToSymbol;
+    private int covered;
+    private ArithmeticCoder.Symbol[] symbols = new ArithmeticCoder.Symbol[256];
+    private Map.Entry<Byte, ArithmeticCoder.Symbol>[] entries;
     private int symbolCount;
     private int currentSymbol;
 
     public Modeler8B(String file) throws IOException {
         this.file = file;
-        FileInputStream data = new FileInputStream(file);
-        Map<Byte, Integer> stats = new HashMap<>();
-        int count = 0;
-        int read = 0;
-        while ( (read = data.read(buffer)) > 0) {
-            count += read;
-            for (int i= 0; i< read; i++) {
-                stats.put(buffer[i], stats.getOrDefault(buffer[i], 0) + 1);
-            }
+        final long[] counts = Histogram.order0(Paths.get(file), ForkJoinPool.commonPool());
+        final int[] freq = Histogram.normalize(counts, 16383);
+        long count = 0;
+        for (long c : counts) {
+            count += c;
         }
-        data.close();
-
-        symbolCount = count;
-        stats.forEach((k,v) -> {
-            System.out.println(k + "," + v + "," + ((double)v/(double)symbolCount));
-        });
-        Map<Byte,ArithmeticCoder.Symbol> firstPass = new HashMap<>();
-        int lastValue = 0;
-        for (Map.Entry<Byte, Integer> e : stats.entrySet()) {
-            double prob = (double)e.getValue()/(double)symbolCount;
-            int highValue = lastValue +  (int)Math.ceil(16383 * prob);
-            firstPass.put(e.getKey(), new ArithmeticCoder.Symbol(lastValue, highValue, 16383));
-            lastValue = highValue;
+        //symbols are counted in an int
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File too large to model: " + count + " bytes");
         }
-        for (Map.Entry<Byte, ArithmeticCoder.Symbol> entry : firstPass.entrySet()) {
-            ArithmeticCoder.Symbol s = new ArithmeticCoder.Symbol(entry.getValue().lowCount, entry.getValue().highCount, lastValue);
-            System.out.println(String.valueOf(entry.getKey()) + ", " + s.lowCount + ", " + s.highCount +", " + s.scale);
-            symbolTable.put(entry.getKey(), s);
+        symbolCount = (int) count;
+        int lastValue = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            if (freq[symbol] > 0) {
+                symbolTable.put((byte) symbol, new ArithmeticCoder.Symbol(lastValue, lastValue + freq[symbol], 16383));
+                lastValue += freq[symbol];
+            }
         }
+        buildTables();
     }
 
     private void openFile() throws IOException {
@@ -75,7 +74,7 @@ public class Modeler8B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
                 bufferCount += data.read(buffer);
             }
             currentSymbol++;
-            return symbolTable.get(buffer[symbolIndex]);
+            return symbols[buffer[symbolIndex] & 0xFF];
         }
         catch (IOException e) {
             throw new RuntimeException("Failed to read next symbol", e);
@@ -88,12 +87,39 @@ public class Modeler8B implements Modeler, Iterator<ArithmeticCoder.Symbol> {
     }
 
     public Map.Entry<Byte, ArithmeticCoder.Symbol> getEntryFromCount(int count) {
+        return entries[getSymbolFromCount(count)];
+    }
+
+    /**
+     * Returns the symbol whose range holds count, without allocating.
+     */
+    public int getSymbolFromCount(int count) {
+        if (count < 0 || count >= covered) {
+            throw new RuntimeException("Could not decode symbol. count = " + count);
+        }
+        return countToSymbol[count] & 0xFF;
+    }
+
+    public ArithmeticCoder.Symbol getSymbol(int symbol) {
+        return symbols[symbol];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void buildTables() {
+        entries = new Map.Entry[symbols.length];
+        covered = 0;
         for (Map.Entry<Byte, ArithmeticCoder.Symbol> entry : symbolTable.entrySet()) {
-            if (count >= entry.getValue().lowCount && count < entry.getValue().highCount) {
-                return entry;
+            final int symbol = entry.getKey() & 0xFF;
+            symbols[symbol] = entry.getValue();
+            entries[symbol] = new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+            covered = Math.max(covered, entry.getValue().highCount);
+        }
+        countToSymbol = new byte[covered];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            if (symbols[symbol] != null) {
+                Arrays.fill(countToSymbol, symbols[symbol].lowCount, symbols[symbol].highCount, (byte) symbol);
             }
         }
-        throw new RuntimeException("Could not decode symbol. count = " + count);
     }
 
     public int getBytesProcessed() {
@@ -2,52 +2,231 @@ package com.johnhite.crypto.compress;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.*;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
-public class ModelerPPM implements Modeler {
-    private Context baseContext;
-    private Context currentContext;
-    private InputStream data;
-    private byte currentByte;
-    private boolean readFirstByte = false;
-    public static final ArithmeticCoder.Symbol ESCAPE = new ArithmeticCoder.Symbol(0, 1,256);
+/**
+ * Order-N PPM model (PPMC: escape count is the number of distinct symbols seen in a context,
+ * with exclusion and update exclusion).
+ *
+ * Each byte is coded in the longest context of the previous N bytes that has predictions for
+ * it, escaping to shorter contexts until one does. Symbols already offered by a longer context
+ * are excluded from the shorter ones. Below order 0 all 256 bytes, and END, are equally likely.
+ *
+ * Contexts live in a trie held in flat arrays. A context node's children are found through an
+ * open addressing hash table keyed by (node, byte), walking back from the most recent byte, and
+ * its symbol counts are a linked list of entries. The node and entry pools are fixed in size;
+ * when either runs out the model starts over from an empty trie, which the decoder does at the
+ * same point.
+ *
+ * Encode with encode, or by iterating over the Symbols for an input stream, escapes included.
+ * Decode with decode, or step by step with getScale and getEntryFromCount.
+ */
+public class ModelerPPM implements Modeler, ByteModel, Iterator<ArithmeticCoder.Symbol> {
+    public static final int END = 256;
+    public static final int DEFAULT_ORDER = 4;
+    public static final int DEFAULT_MAX_NODES = 1 << 18;
+    private static final int MAX_ORDER = 8;
+    private static final int ALPHABET = 257;
+    //counts are halved above this, which keeps every scale below 2^14 for the 16 bit coder
+    private static final int MAX_TOTAL = 1 << 13;
+
+    private final int maxOrder;
+    private final int maxNodes;
+    private final int maxEntries;
+
+    //context nodes: total count, distinct symbols and first symbol entry
+    private final int[] nodeTotal;
+    private final int[] nodeDistinct;
+    private final int[] nodeHead;
+    private int nodeCount;
+
+    //symbol entries, linked per node
+    private final int[] entrySymbol;
+    private final int[] entryFreq;
+    private final int[] entryNext;
+    private int entryCount;
+
+    //(parent << 8 | byte) + 1 -> child, 0 is an empty slot
+    private final int[] hashKey;
+    private final int[] hashChild;
+    private final int hashShift;
+
+    //the last maxOrder bytes, most recent in the low byte
+    private long history = 0;
+    private int historyLength = 0;
+
+    //state of the symbol being coded
+    private final int[] path;
+    private int top;
+    private int order;
+    private int stepTotal;
+    private int stepDistinct;
+    //the range of the last coding step
+    private int stepLow;
+    private int stepHigh;
+    private int stepScale;
+    private final int[] excluded = new int[ALPHABET];
+    private int excludedCount;
+    private int stamp = 0;
+    private boolean inSymbol = false;
+
+    private final InputStream data;
+    private int nextByte = -1;
+    private int bytesProcessed = 0;
+
+    public ModelerPPM() {
+        this(null, DEFAULT_ORDER, DEFAULT_MAX_NODES);
+    }
+
+    public ModelerPPM(int order, int maxNodes) {
+        this(null, order, maxNodes);
+    }
 
     public ModelerPPM(InputStream in) {
+        this(in, DEFAULT_ORDER, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param in the bytes to iterate over, may be null when the model is driven by encode or decode
+     * @param order longest context, 0 to 8 bytes
+     * @param maxNodes context nodes in the pool, 64 to 2^22
+     */
+    public ModelerPPM(InputStream in, int order, int maxNodes) {
+        if (order < 0 || order > MAX_ORDER) {
+            throw new IllegalArgumentException("PPM order must be between 0 and " + MAX_ORDER);
+        }
+        if (maxNodes < 64 || maxNodes > 1 << 22) {
+            throw new IllegalArgumentException("PPM node pool must hold between 64 and 2^22 nodes");
+        }
         this.data = in;
+        this.maxOrder = order;
+        this.maxNodes = maxNodes;
+        this.maxEntries = 2 * maxNodes;
+        this.nodeTotal = new int[maxNodes];
+        this.nodeDistinct = new int[maxNodes];
+        this.nodeHead = new int[maxNodes];
+        this.entrySymbol = new int[maxEntries];
+        this.entryFreq = new int[maxEntries];
+        this.entryNext = new int[maxEntries];
+        //at most half full
+        final int hashSize = Integer.highestOneBit(maxNodes - 1) << 2;
+        this.hashKey = new int[hashSize];
+        this.hashChild = new int[hashSize];
+        this.hashShift = 32 - Integer.numberOfTrailingZeros(hashSize);
+        this.path = new int[order + 1];
+        clearTrie();
     }
 
+    /**
+     * Forgets everything seen so far, keeping the allocated pools.
+     */
     @Override
-    public boolean hasNext() {
-        return false;
+    public void reset() {
+        clearTrie();
+        history = 0;
+        historyLength = 0;
+        inSymbol = false;
+        bytesProcessed = 0;
     }
 
+    /**
+     * Codes symbol, a byte or END, with as many escapes as it takes.
+     */
     @Override
-    public ArithmeticCoder.Symbol next() {
-        try {
-            if (!readFirstByte) {
-                currentByte = (byte)data.read();
+    public void encode(int symbol, EntropyCoder coder, ArithmeticCoder.BitIO out) throws IOException {
+        if (symbol < 0 || symbol > END) {
+            throw new IllegalArgumentException("Symbol out of range: " + symbol);
+        }
+        begin();
+        for (;;) {
+            encodeStep(symbol);
+            coder.encodeSymbol(stepLow, stepHigh, stepScale, out);
+            if (!inSymbol) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decodes the next symbol, a byte or END.
+     */
+    @Override
+    public int decode(EntropyCoder coder, ArithmeticCoder.BitIO in) throws IOException {
+        begin();
+        for (;;) {
+            final int count = coder.getCurrentCount(getScale());
+            final int symbol = decodeStep(count);
+            coder.removeSymbolFromStream(stepLow, stepHigh, stepScale, in);
+            if (symbol >= 0) {
+                return symbol;
             }
+        }
+    }
 
-            if (currentContext.inc(currentByte)) {
-                return ESCAPE;
+    /**
+     * The scale of the next coding step on the decoder side.
+     */
+    public int getScale() {
+        if (!inSymbol) {
+            begin();
+        }
+        return order >= 0 ? stepTotal + stepDistinct : ALPHABET - excludedCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (inSymbol) {
+            return true;
+        }
+        if (nextByte < 0) {
+            try {
+                nextByte = data.read();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read next symbol", e);
             }
-            ArithmeticCoder.Symbol symbol = currentContext.getSymbol(currentByte);
-            currentContext = currentContext.nextContext(currentByte);
-            currentByte = (byte)data.read();
-            return symbol;
-        }catch (IOException e) {
-            throw new RuntimeException(e);
         }
+        return nextByte >= 0;
+    }
+
+    /**
+     * Returns the next Symbol to code for the input stream, which is an escape until the
+     * context that predicts the next byte is reached.
+     */
+    @Override
+    public ArithmeticCoder.Symbol next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (!inSymbol) {
+            begin();
+        }
+        encodeStep(nextByte);
+        if (!inSymbol) {
+            nextByte = -1;
+        }
+        return new ArithmeticCoder.Symbol(stepLow, stepHigh, stepScale);
     }
 
+    /**
+     * Decodes one step for a count read with the scale from getScale. The key of the entry is
+     * null for an escape, after which the caller decodes again.
+     */
     @Override
     public Map.Entry<Byte, ArithmeticCoder.Symbol> getEntryFromCount(int count) {
-        return null;
+        if (!inSymbol) {
+            begin();
+        }
+        final int symbol = decodeStep(count);
+        return new AbstractMap.SimpleImmutableEntry<>(symbol >= 0 ? (byte) symbol : null, new ArithmeticCoder.Symbol(stepLow, stepHigh, stepScale));
     }
 
     @Override
     public int getBytesProcessed() {
-        return 0;
+        return bytesProcessed;
     }
 
     @Override
@@ -57,79 +236,228 @@ public class ModelerPPM implements Modeler {
 
     @Override
     public Iterator<ArithmeticCoder.Symbol> iterator() {
-        return null;
-    }
-    private static class Stats {
-        public int count;
-        public int low;
-        public Context next;
-        public Stats nextStat;
-    }
-    private static class Context {
-        public static final int MAX_ORDER = 3;
-        public Context previous;
-        public Map<Byte, Stats> stats = new HashMap<>();
-        private Stats head;
-        private Stats tail;
-        public final int order;
-        public int totalCount = 0;
-
-        public Context() {
-            order = 0;
-        }
-        public Context(Context previous) {
-            order = previous.order + 1;
-        }
-        public Context nextContext(byte b) {
-            //TODO if there is no next context - find the next highest order context in the tree
-            if (order == MAX_ORDER) {
-                return previous.get(b).next;
+        return this;
+    }
+
+    /**
+     * Finds or creates the contexts for the current history and moves to the longest one with
+     * predictions.
+     */
+    private void begin() {
+        if (nodeCount + maxOrder + 1 > maxNodes || entryCount + maxOrder + 1 > maxEntries) {
+            clearTrie();
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(excluded, 0);
+            stamp = 1;
+        }
+        excludedCount = 0;
+        top = Math.min(maxOrder, historyLength);
+        int node = 0;
+        path[0] = 0;
+        for (int k = 1; k <= top; k++) {
+            node = child(node, (int) (history >>> (8 * (k - 1))) & 0xFF);
+            path[k] = node;
+        }
+        order = top;
+        inSymbol = true;
+        skipEmpty();
+    }
+
+    /**
+     * Moves down to the first context, from order, that offers a symbol not yet excluded.
+     */
+    private void skipEmpty() {
+        while (order >= 0) {
+            final int node = path[order];
+            if (excludedCount == 0) {
+                //nothing to exclude yet, the node's own counts
+                if (nodeDistinct[node] > 0) {
+                    stepTotal = nodeTotal[node];
+                    stepDistinct = nodeDistinct[node];
+                    return;
+                }
+                order--;
+                continue;
+            }
+            int total = 0;
+            int distinct = 0;
+            for (int e = nodeHead[node]; e >= 0; e = entryNext[e]) {
+                if (excluded[entrySymbol[e]] != stamp) {
+                    total += entryFreq[e];
+                    distinct++;
+                }
+            }
+            if (distinct > 0) {
+                stepTotal = total;
+                stepDistinct = distinct;
+                return;
             }
-            return stats.get(b).next;
+            order--;
         }
-        public Stats get(byte b) {
-            return stats.get(b);
+    }
+
+    /**
+     * Leaves the range of the next step for symbol, a symbol or an escape, in the step fields.
+     */
+    private void encodeStep(int symbol) {
+        if (order < 0) {
+            final int scale = ALPHABET - excludedCount;
+            int low = 0;
+            for (int s = 0; s < symbol; s++) {
+                if (excluded[s] != stamp) {
+                    low++;
+                }
+            }
+            step(low, low + 1, scale);
+            finish(symbol);
+            return;
         }
-        public ArithmeticCoder.Symbol getSymbol(byte b) {
-            Stats stats = get(b);
-            int low = stats.low;
-            int high = stats.low + stats.count;
-            int scale = totalCount;
-            return new ArithmeticCoder.Symbol(low, high, scale);
+        int low = 0;
+        for (int e = nodeHead[path[order]]; e >= 0; e = entryNext[e]) {
+            final int s = entrySymbol[e];
+            if (excluded[s] == stamp) {
+                continue;
+            }
+            if (s == symbol) {
+                step(low, low + entryFreq[e], stepTotal + stepDistinct);
+                finish(symbol);
+                return;
+            }
+            low += entryFreq[e];
         }
+        escape();
+    }
 
-        public void add(byte b) {
-            Stats s = new Stats();
-            s.count = 1;
-            s.low = totalCount + 1;
-            if (order <= MAX_ORDER) {
-                s.next = new Context(this);
+    /**
+     * Returns the symbol for count, or -1 for an escape, and leaves its range in the step fields.
+     */
+    private int decodeStep(int count) {
+        if (order < 0) {
+            int symbol = 0;
+            for (int seen = -1; ; symbol++) {
+                if (excluded[symbol] != stamp && ++seen == count) {
+                    break;
+                }
+            }
+            step(count, count + 1, ALPHABET - excludedCount);
+            finish(symbol);
+            return symbol;
+        }
+        if (count >= stepTotal) {
+            escape();
+            return -1;
+        }
+        int low = 0;
+        for (int e = nodeHead[path[order]]; ; e = entryNext[e]) {
+            final int s = entrySymbol[e];
+            if (excluded[s] == stamp) {
+                continue;
             }
-            if (head == null) {
-                head = s;
-                tail = s;
+            if (count < low + entryFreq[e]) {
+                step(low, low + entryFreq[e], stepTotal + stepDistinct);
+                finish(s);
+                return s;
             }
-            tail.nextStat = s;
-            tail = s;
-            stats.put((byte)b, s);
-            totalCount++;
+            low += entryFreq[e];
         }
+    }
 
-        public boolean inc(byte b) {
-            Stats s = stats.get(b);
-            if (s == null) {
-                add(b);
-                return true;
+    /**
+     * The escape from the current context, whose symbols are then excluded.
+     */
+    private void escape() {
+        step(stepTotal, stepTotal + stepDistinct, stepTotal + stepDistinct);
+        for (int e = nodeHead[path[order]]; e >= 0; e = entryNext[e]) {
+            if (excluded[entrySymbol[e]] != stamp) {
+                excluded[entrySymbol[e]] = stamp;
+                excludedCount++;
             }
-            totalCount++;
-            s.count += 1;
-            //increment low counters for all following stats.
-            s = s.nextStat;
-            while (s != null) {
-                s.low += 1;
-                s = s.nextStat;
+        }
+        order--;
+        skipEmpty();
+    }
+
+    private void step(int low, int high, int scale) {
+        stepLow = low;
+        stepHigh = high;
+        stepScale = scale;
+    }
+
+    /**
+     * Update exclusion: the symbol is counted in the context it was coded in and added to the
+     * longer contexts that escaped.
+     */
+    private void finish(int symbol) {
+        inSymbol = false;
+        if (symbol == END) {
+            return;
+        }
+        for (int k = Math.max(order, 0); k <= top; k++) {
+            increment(path[k], symbol);
+        }
+        history = (history << 8) | symbol;
+        historyLength = Math.min(historyLength + 1, maxOrder);
+        bytesProcessed++;
+    }
+
+    private void increment(int node, int symbol) {
+        int e = nodeHead[node];
+        int previous = -1;
+        while (e >= 0 && entrySymbol[e] != symbol) {
+            previous = e;
+            e = entryNext[e];
+        }
+        if (e >= 0 && previous >= 0) {
+            //move to front, so frequent symbols are found early
+            entryNext[previous] = entryNext[e];
+            entryNext[e] = nodeHead[node];
+            nodeHead[node] = e;
+        }
+        if (e < 0) {
+            e = entryCount++;
+            entrySymbol[e] = symbol;
+            entryFreq[e] = 1;
+            entryNext[e] = nodeHead[node];
+            nodeHead[node] = e;
+            nodeDistinct[node]++;
+        } else {
+            entryFreq[e]++;
+        }
+        if (++nodeTotal[node] > MAX_TOTAL) {
+            int total = 0;
+            for (e = nodeHead[node]; e >= 0; e = entryNext[e]) {
+                entryFreq[e] = (entryFreq[e] + 1) >>> 1;
+                total += entryFreq[e];
             }
-            return false;
+            nodeTotal[node] = total;
         }
     }
+
+    private int child(int parent, int b) {
+        final int key = ((parent << 8) | b) + 1;
+        int slot = (key * 0x9E3779B9) >>> hashShift;
+        while (hashKey[slot] != 0) {
+            if (hashKey[slot] == key) {
+                return hashChild[slot];
+            }
+            slot = (slot + 1) & (hashKey.length - 1);
+        }
+        final int node = nodeCount++;
+        nodeTotal[node] = 0;
+        nodeDistinct[node] = 0;
+        nodeHead[node] = -1;
+        hashKey[slot] = key;
+        hashChild[slot] = node;
+        return node;
+    }
+
+    private void clearTrie() {
+        Arrays.fill(hashKey, 0);
+        nodeCount = 1;
+        nodeTotal[0] = 0;
+        nodeDistinct[0] = 0;
+        nodeHead[0] = -1;
+        entryCount = 0;
+    }
 }
@@ -0,0 +1,100 @@
+package com.johnhite.crypto.compress;
+
+import java.io.IOException;
+
+/**
+ * Byte oriented range coder with carry propagation, as in LZMA.
+ *
+ * low is kept in 33 bits and range in 32. Whenever range falls below 2^24 the top byte of low is
+ * shifted out. Runs of 0xFF bytes are held back (cache and cacheSize) until it is known
+ * whether a carry will ripple through them. The coder renormalizes a byte at a time instead of
+ * a bit at a time, and allows a scale of up to 2^24 where the 16 bit ArithmeticCoder allows 2^14.
+ *
+ * The first byte of the output is always 0 and the encoder ends with 4 bytes of low, so every
+ * stream is at least 5 bytes.
+ */
+public class RangeCoder implements EntropyCoder {
+    public static final int MAX_SCALE = 1 << 24;
+    private static final long TOP = 1L << 24;
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private long low;
+    private long range;
+    private long code;
+    private int cache;
+    private long cacheSize;
+
+    public RangeCoder() {
+        initializeEncoder();
+    }
+
+    @Override
+    public void initializeEncoder() {
+        low = 0;
+        range = MASK;
+        cache = 0;
+        cacheSize = 1;
+    }
+
+    @Override
+    public void encodeSymbol(int lowCount, int highCount, int scale, ArithmeticCoder.BitIO stream) throws IOException {
+        final long r = range / scale;
+        low += r * lowCount;
+        range = r * (highCount - lowCount);
+        while (range < TOP) {
+            range <<= 8;
+            shiftLow(stream);
+        }
+    }
+
+    @Override
+    public void flushEncoder(ArithmeticCoder.BitIO stream) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            shiftLow(stream);
+        }
+    }
+
+    /**
+     * Moves bits 24-31 of low to the output, or into the run of pending bytes. Bit 32 of low is
+     * the carry into the pending bytes.
+     */
+    private void shiftLow(ArithmeticCoder.BitIO stream) throws IOException {
+        if (low < 0xFF000000L || low > MASK) {
+            final int carry = (int) (low >>> 32);
+            int b = cache;
+            do {
+                stream.writeBits(b + carry, 8);
+                b = 0xFF;
+            } while (--cacheSize != 0);
+            cache = (int) (low >>> 24) & 0xFF;
+        }
+        cacheSize++;
+        low = (low & 0x00FFFFFFL) << 8;
+    }
+
+    @Override
+    public void initializeDecoder(ArithmeticCoder.BitIO stream) throws IOException {
+        range = MASK;
+        code = 0;
+        for (int i = 0; i < 5; i++) {
+            code = ((code << 8) | stream.readBits(8)) & MASK;
+        }
+    }
+
+    @Override
+    public int getCurrentCount(int scale) {
+        //code may reach past the last symbol by the rounding of range / scale
+        return (int) Math.min(code / (range / scale), scale - 1);
+    }
+
+    @Override
+    public void removeSymbolFromStream(int lowCount, int highCount, int scale, ArithmeticCoder.BitIO stream) throws IOException {
+        final long r = range / scale;
+        code -= r * lowCount;
+        range = r * (highCount - lowCount);
+        while (range < TOP) {
+            range <<= 8;
+            code = ((code << 8) | stream.readBits(8)) & MASK;
+        }
+    }
+}
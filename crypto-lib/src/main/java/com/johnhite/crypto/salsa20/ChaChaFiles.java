@@ -0,0 +1,115 @@
+package com.johnhite.crypto.salsa20;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encrypts and decrypts whole files with ChaCha on all cores.
+ *
+ * The file is split into segments at block aligned offsets. Each segment is memory mapped in
+ * the input and output files and processed by a worker with its own ChaCha instance, seeked to
+ * the segment's offset in the keystream. The output is byte for byte what ChaChaOutputStream
+ * would produce for the same key and nonce, so either may be used to read the other.
+ */
+public final class ChaChaFiles {
+    //bytes processed by one worker at a time, a multiple of the ChaCha block size
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private ChaChaFiles() {}
+
+    /**
+     * Encrypts in to out on the common ForkJoinPool. out is created or replaced.
+     */
+    public static void encrypt(Path in, Path out, byte[] key, byte[] nonce) throws IOException {
+        process(in, out, key, nonce, ForkJoinPool.commonPool());
+    }
+
+    public static void encrypt(Path in, Path out, byte[] key, byte[] nonce, ForkJoinPool pool) throws IOException {
+        process(in, out, key, nonce, pool);
+    }
+
+    /**
+     * Decrypts in to out on the common ForkJoinPool. out is created or replaced.
+     */
+    public static void decrypt(Path in, Path out, byte[] key, byte[] nonce) throws IOException {
+        process(in, out, key, nonce, ForkJoinPool.commonPool());
+    }
+
+    public static void decrypt(Path in, Path out, byte[] key, byte[] nonce, ForkJoinPool pool) throws IOException {
+        process(in, out, key, nonce, pool);
+    }
+
+    private static void process(Path in, Path out, byte[] key, byte[] nonce, ForkJoinPool pool) throws IOException {
+        if (Files.exists(out) && Files.isSameFile(in, out)) {
+            throw new IllegalArgumentException("Input and output must be different files");
+        }
+        //check the key and nonce before any work is handed out
+        new ChaCha(key, nonce);
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = src.size();
+            if (size == 0) {
+                return;
+            }
+            //size the output up front so workers never extend the file concurrently
+            dst.write(ByteBuffer.allocate(1), size - 1);
+            final long segments = (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+            try {
+                pool.invoke(new SegmentTask(src, dst, size, key, nonce, 0, segments));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Processes segments [from, to) by splitting the range in half until a single segment is left.
+     */
+    private static final class SegmentTask extends RecursiveAction {
+        private final FileChannel src;
+        private final FileChannel dst;
+        private final long size;
+        private final byte[] key;
+        private final byte[] nonce;
+        private final long from;
+        private final long to;
+
+        SegmentTask(FileChannel src, FileChannel dst, long size, byte[] key, byte[] nonce, long from, long to) {
+            this.src = src;
+            this.dst = dst;
+            this.size = size;
+            this.key = key;
+            this.nonce = nonce;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final long mid = (from + to) >>> 1;
+                invokeAll(new SegmentTask(src, dst, size, key, nonce, from, mid), new SegmentTask(src, dst, size, key, nonce, mid, to));
+                return;
+            }
+            final long offset = from * SEGMENT_SIZE;
+            final long length = Math.min(SEGMENT_SIZE, size - offset);
+            try {
+                final MappedByteBuffer input = src.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                final MappedByteBuffer output = dst.map(FileChannel.MapMode.READ_WRITE, offset, length);
+                final ChaCha cipher = new ChaCha(key, nonce);
+                cipher.seek(offset);
+                cipher.process(input, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
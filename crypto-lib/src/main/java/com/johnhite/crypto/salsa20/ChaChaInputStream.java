@@ -5,25 +5,71 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 public class ChaChaInputStream extends InputStream {
+    private static final int TRANSFER_BUFFER_SIZE = 16 * 1024;
     private InputStream in;
     private ChaCha cipher;
-    private byte[] keyStreamBuffer = new byte[64];
-    private int blockCount =64;
+    private final byte[] single = new byte[1];
 
     public ChaChaInputStream(InputStream in, byte[] key, byte[] nonce) {
         this.in = in;
         this.cipher = new ChaCha(key, nonce);
     }
 
+    /**
+     * Decrypts with a cipher created by the caller, e.g. from {@link XChaCha#cipher(byte[])}.
+     */
+    public ChaChaInputStream(InputStream in, ChaCha cipher) {
+        this.in = in;
+        this.cipher = cipher;
+    }
+
     @Override
     public int read() throws IOException {
-        if (blockCount >= 64) {
-            keyStreamBuffer = cipher.next();
-            blockCount = 0;
+        final int next = in.read();
+        if (next < 0) {
+            return -1;
+        }
+        single[0] = (byte) next;
+        cipher.xor(single, 0, single, 0, 1);
+        return single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int n = in.read(b, off, len);
+        if (n > 0) {
+            cipher.xor(b, off, b, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * Skips n bytes of the underlying stream and the matching keystream, without decrypting them.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        final long skipped = in.skip(n);
+        if (skipped > 0) {
+            cipher.skip(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        final byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        long transferred = 0;
+        int n;
+        while ((n = read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, n);
+            transferred += n;
         }
-        int next = in.read() ^ keyStreamBuffer[blockCount];
-        blockCount++;
-        return next;
+        return transferred;
     }
 
     @Override
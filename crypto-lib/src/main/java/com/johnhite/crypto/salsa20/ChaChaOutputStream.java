@@ -4,24 +4,58 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 public class ChaChaOutputStream extends OutputStream {
+    //largest number of bytes encrypted per write to the underlying stream
+    private static final int BUFFER_SIZE = 16 * 1024;
     private OutputStream out;
     private ChaCha cipher;
-    private byte[] keyStreamBuffer = new byte[64];
-    private int blockCount =64;
+    private byte[] buffer;
 
     public ChaChaOutputStream(OutputStream out, byte[] key, byte[] nonce) {
         this.out = out;
         this.cipher = new ChaCha(key, nonce);
     }
 
+    /**
+     * Encrypts with a cipher created by the caller, e.g. from {@link XChaCha#cipher(byte[])}.
+     */
+    public ChaChaOutputStream(OutputStream out, ChaCha cipher) {
+        this.out = out;
+        this.cipher = cipher;
+    }
+
     @Override
     public void write(int b) throws IOException {
-        if (blockCount >= 64) {
-            keyStreamBuffer = cipher.next();
-            blockCount = 0;
+        final byte[] single = buffer(1);
+        single[0] = (byte) b;
+        cipher.xor(single, 0, single, 0, 1);
+        out.write(single[0]);
+    }
+
+    /**
+     * Encrypts b into an internal buffer, leaving the caller's array unchanged, and writes it to
+     * the underlying stream in pieces of at most 16KB.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] encrypted = buffer(Math.min(len, BUFFER_SIZE));
+        while (len > 0) {
+            final int n = Math.min(len, encrypted.length);
+            cipher.xor(b, off, encrypted, 0, n);
+            out.write(encrypted, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private byte[] buffer(int size) {
+        if (buffer == null || buffer.length < size) {
+            //small writes get a small buffer, anything larger goes straight to the full size
+            buffer = new byte[size <= 64 ? 64 : BUFFER_SIZE];
         }
-        out.write(b ^ keyStreamBuffer[blockCount]);
-        blockCount++;
+        return buffer;
     }
 
     @Override
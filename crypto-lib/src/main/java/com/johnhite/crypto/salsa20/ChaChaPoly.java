@@ -0,0 +1,112 @@
+package com.johnhite.crypto.salsa20;
+
+import com.johnhite.crypto.kdf.HMACKDF;
+
+import java.security.GeneralSecurityException;
+
+/*
+Segment sealing shared by ChaChaPolyOutputStream and ChaChaPolyInputStream.
+
+Stream layout:
+  header:   version (1 byte) || segment size (4 bytes, big endian) || salt (32 bytes)
+  segments: ciphertext || tag (16 bytes), every segment but the last holds exactly segment size
+            bytes of ciphertext, the last holds 0 to segment size bytes
+
+The stream key is derived from the caller's key and the whole header with HMACKDF, so every
+stream gets a fresh key and the header cannot be altered without every segment failing. Segment
+i is sealed with the ChaCha20-Poly1305 construction of RFC 8439 section 2.8 with no additional
+data, using the 64 bit nonce of ChaCha: big endian i in the first 7 bytes and 1 in the last byte
+for the final segment, 0 otherwise (the STREAM construction of Hoang, Reyhanitabar, Rogaway and
+Vizar). Reordering, dropping or duplicating segments, or truncating the stream at a segment
+boundary, all fail authentication.
+ */
+final class ChaChaPoly {
+    static final int VERSION = 1;
+    static final int SALT_SIZE = 32;
+    static final int HEADER_SIZE = 1 + 4 + SALT_SIZE;
+    static final int TAG_SIZE = Poly1305.TAG_SIZE;
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    //segment counters must fit the 7 nonce bytes
+    private static final long MAX_SEGMENTS = 1L << 56;
+    private static final byte[] LABEL = "ChaCha20-Poly1305 STREAM".getBytes();
+
+    private final byte[] key;
+    private final Poly1305 poly = new Poly1305();
+    private final byte[] nonce = new byte[8];
+    private final byte[] block = new byte[ChaCha.BLOCK_SIZE];
+    private final byte[] lengths = new byte[16];
+    private final byte[] tag = new byte[TAG_SIZE];
+    private long segment = 0;
+
+    ChaChaPoly(byte[] key, byte[] header) {
+        try {
+            this.key = HMACKDF.deriveKey(key, LABEL, header, (short) 256);
+        } catch (GeneralSecurityException e) {
+            //This should not be possible, HmacSHA512 is required of every JRE
+            throw new SecurityException("Error deriving stream key.", e);
+        }
+    }
+
+    /**
+     * Encrypts buf[off, off + len) in place and writes the tag to buf[off + len].
+     */
+    void seal(byte[] buf, int off, int len, boolean last) {
+        final ChaCha cipher = next(last);
+        cipher.xor(buf, off, buf, off, len);
+        mac(buf, off, len);
+        poly.doFinal(buf, off + len);
+    }
+
+    /**
+     * Verifies the tag at buf[off + len] and decrypts buf[off, off + len) in place.
+     *
+     * @return false if the segment is not authentic, in which case nothing is decrypted
+     */
+    boolean open(byte[] buf, int off, int len, boolean last) {
+        final ChaCha cipher = next(last);
+        mac(buf, off, len);
+        poly.doFinal(tag, 0);
+        //constant time comparison
+        int diff = 0;
+        for (int i = 0; i < TAG_SIZE; i++) {
+            diff |= tag[i] ^ buf[off + len + i];
+        }
+        if (diff != 0) {
+            return false;
+        }
+        cipher.xor(buf, off, buf, off, len);
+        return true;
+    }
+
+    /**
+     * Returns a cipher for the next segment with its Poly1305 key, the first 32 bytes of block 0,
+     * already loaded. Encryption starts at block 1.
+     */
+    private ChaCha next(boolean last) {
+        if (segment == MAX_SEGMENTS) {
+            throw new IllegalStateException("Stream exceeds the maximum number of segments");
+        }
+        for (int i = 0; i < 7; i++) {
+            nonce[i] = (byte) (segment >>> (8 * (6 - i)));
+        }
+        nonce[7] = (byte) (last ? 1 : 0);
+        segment++;
+        final ChaCha cipher = new ChaCha(key, nonce);
+        cipher.keystream(block, 0, 1);
+        poly.init(block, 0);
+        return cipher;
+    }
+
+    /**
+     * MAC input for empty additional data: ciphertext || pad16 || le64(0) || le64(len).
+     */
+    private void mac(byte[] ciphertext, int off, int len) {
+        poly.update(ciphertext, off, len);
+        poly.pad();
+        for (int i = 0; i < 8; i++) {
+            lengths[8 + i] = (byte) ((long) len >>> (8 * i));
+        }
+        poly.update(lengths, 0, lengths.length);
+    }
+}
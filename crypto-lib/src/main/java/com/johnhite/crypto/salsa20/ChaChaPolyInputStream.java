@@ -0,0 +1,133 @@
+package com.johnhite.crypto.salsa20;
+
+import javax.crypto.AEADBadTagException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream written by {@link ChaChaPolyOutputStream}. Each segment is authenticated
+ * before any of its data is returned, so only one segment is buffered at a time. Tampering,
+ * reordering or truncation of the stream is reported as an IOException caused by an
+ * AEADBadTagException.
+ */
+public class ChaChaPolyInputStream extends InputStream {
+    private final InputStream in;
+    private final byte[] key;
+    private ChaChaPoly aead;
+    //sealed segment followed by one byte of look ahead, used to tell whether it is the last
+    private byte[] segment;
+    private int segmentSize;
+    private int filled = 0;
+    //decrypted data of the current segment is segment[position, limit)
+    private int position = 0;
+    private int limit = 0;
+    private boolean last = false;
+
+    public ChaChaPolyInputStream(InputStream in, byte[] key) {
+        this.in = in;
+        this.key = key.clone();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return segment[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        final int n = Math.min(len, limit - position);
+        System.arraycopy(segment, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Makes decrypted data available, reading and authenticating the next segment if needed.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean ensureData() throws IOException {
+        while (position == limit) {
+            if (last) {
+                return false;
+            }
+            nextSegment();
+        }
+        return true;
+    }
+
+    private void nextSegment() throws IOException {
+        if (aead == null) {
+            readHeader();
+        }
+        //keep the look ahead byte of the previous segment
+        if (filled > limit + ChaChaPoly.TAG_SIZE) {
+            segment[0] = segment[filled - 1];
+            filled = 1;
+        } else {
+            filled = 0;
+        }
+        filled += readFully(segment, filled, segment.length - filled);
+        last = filled < segment.length;
+        final int length = (last ? filled : filled - 1) - ChaChaPoly.TAG_SIZE;
+        if (length < 0) {
+            throw new IOException("Stream is truncated", new AEADBadTagException("Missing final segment"));
+        }
+        if (!aead.open(segment, 0, length, last)) {
+            throw new IOException("Segment authentication failed", new AEADBadTagException("Segment authentication failed"));
+        }
+        position = 0;
+        limit = length;
+    }
+
+    private void readHeader() throws IOException {
+        final byte[] header = new byte[ChaChaPoly.HEADER_SIZE];
+        if (readFully(header, 0, header.length) < header.length) {
+            throw new EOFException("Stream header is truncated");
+        }
+        if (header[0] != ChaChaPoly.VERSION) {
+            throw new IOException("Unsupported stream version " + header[0]);
+        }
+        segmentSize = ((header[1] & 0xFF) << 24) | ((header[2] & 0xFF) << 16) | ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+        if (segmentSize < 1 || segmentSize > ChaChaPoly.MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid segment size " + segmentSize);
+        }
+        segment = new byte[segmentSize + ChaChaPoly.TAG_SIZE + 1];
+        aead = new ChaChaPoly(key, header);
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            final int n = in.read(b, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+}
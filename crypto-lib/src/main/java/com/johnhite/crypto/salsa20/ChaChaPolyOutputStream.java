@@ -0,0 +1,105 @@
+package com.johnhite.crypto.salsa20;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+
+/**
+ * Authenticated ChaCha20-Poly1305 encryption of a stream in fixed size segments, so the data
+ * is encrypted and authenticated in one pass and can be verified incrementally when it is read
+ * back with {@link ChaChaPolyInputStream}. See {@link ChaChaPoly} for the format.
+ *
+ * The stream must be closed to write the final segment; a stream that is not closed cannot be
+ * read back.
+ */
+public class ChaChaPolyOutputStream extends OutputStream {
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final OutputStream out;
+    private final ChaChaPoly aead;
+    //plaintext of the current segment followed by room for its tag
+    private final byte[] segment;
+    private final int segmentSize;
+    private int length = 0;
+    private boolean closed = false;
+
+    public ChaChaPolyOutputStream(OutputStream out, byte[] key) throws IOException {
+        this(out, key, ChaChaPoly.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param out the stream receiving the header and sealed segments
+     * @param key the encryption key, a fresh stream key is derived from it for every stream
+     * @param segmentSize plaintext bytes per segment, at most 16MB
+     */
+    public ChaChaPolyOutputStream(OutputStream out, byte[] key, int segmentSize) throws IOException {
+        if (segmentSize < 1 || segmentSize > ChaChaPoly.MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segment size must be between 1 and " + ChaChaPoly.MAX_SEGMENT_SIZE);
+        }
+        this.out = out;
+        this.segmentSize = segmentSize;
+        this.segment = new byte[segmentSize + ChaChaPoly.TAG_SIZE];
+        final byte[] header = new byte[ChaChaPoly.HEADER_SIZE];
+        header[0] = ChaChaPoly.VERSION;
+        header[1] = (byte) (segmentSize >>> 24);
+        header[2] = (byte) (segmentSize >>> 16);
+        header[3] = (byte) (segmentSize >>> 8);
+        header[4] = (byte) segmentSize;
+        final byte[] salt = new byte[ChaChaPoly.SALT_SIZE];
+        RANDOM.nextBytes(salt);
+        System.arraycopy(salt, 0, header, 5, salt.length);
+        this.aead = new ChaChaPoly(key, header);
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            //a full segment is only sealed once more data arrives, the last segment is sealed by close
+            if (length == segmentSize) {
+                aead.seal(segment, 0, length, false);
+                out.write(segment, 0, length + ChaChaPoly.TAG_SIZE);
+                length = 0;
+            }
+            final int n = Math.min(len, segmentSize - length);
+            System.arraycopy(b, off, segment, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Flushes the sealed segments written so far. Buffered data of the current segment is only
+     * written when the segment is full or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            aead.seal(segment, 0, length, true);
+            out.write(segment, 0, length + ChaChaPoly.TAG_SIZE);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+}
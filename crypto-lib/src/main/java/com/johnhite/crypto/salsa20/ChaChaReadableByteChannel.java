@@ -0,0 +1,56 @@
+package com.johnhite.crypto.salsa20;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decrypts everything read from a channel with ChaCha. Bytes are decrypted in place in the
+ * destination buffer, heap or direct, without an intermediate copy.
+ */
+public class ChaChaReadableByteChannel implements ReadableByteChannel {
+    private final ReadableByteChannel in;
+    private final ChaCha cipher;
+
+    public ChaChaReadableByteChannel(ReadableByteChannel in, byte[] key, byte[] nonce) {
+        this.in = in;
+        this.cipher = new ChaCha(key, nonce);
+    }
+
+    /**
+     * Decrypts with a cipher created by the caller, e.g. from {@link XChaCha#cipher(byte[])}.
+     */
+    public ChaChaReadableByteChannel(ReadableByteChannel in, ChaCha cipher) {
+        this.in = in;
+        this.cipher = cipher;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        final int start = dst.position();
+        final int n = in.read(dst);
+        if (n > 0) {
+            decryptRead(cipher, dst, start);
+        }
+        return n;
+    }
+
+    /**
+     * Decrypts dst[start, position) in place.
+     */
+    static void decryptRead(ChaCha cipher, ByteBuffer dst, int start) {
+        final ByteBuffer read = dst.duplicate();
+        read.flip().position(start);
+        cipher.process(read, read);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return in.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,97 @@
+package com.johnhite.crypto.salsa20;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Random access to a ChaCha encrypted channel such as a FileChannel. Byte i of the channel is
+ * encrypted with byte i of the keystream, so any range can be read or rewritten without touching
+ * the rest of the data. Moving the position seeks the keystream in constant time.
+ *
+ * Rewriting a range of ciphertext with different plaintext reuses keystream. An observer who sees
+ * both versions learns the XOR of the two plaintexts.
+ */
+public class ChaChaSeekableByteChannel implements SeekableByteChannel {
+    private final SeekableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ChaChaWritableByteChannel.BUFFER_SIZE);
+    private final ChaCha cipher;
+
+    public ChaChaSeekableByteChannel(SeekableByteChannel channel, byte[] key, byte[] nonce) throws IOException {
+        this(channel, new ChaCha(key, nonce));
+    }
+
+    /**
+     * Uses a cipher created by the caller, e.g. from {@link XChaCha#cipher(byte[])}. The cipher
+     * is seeked to match the channel position.
+     */
+    public ChaChaSeekableByteChannel(SeekableByteChannel channel, ChaCha cipher) throws IOException {
+        this.channel = channel;
+        this.cipher = cipher;
+        align();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        align();
+        final int start = dst.position();
+        final int n = channel.read(dst);
+        if (n > 0) {
+            ChaChaReadableByteChannel.decryptRead(cipher, dst, start);
+        }
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        align();
+        return ChaChaWritableByteChannel.encryptTo(cipher, src, buffer, channel);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return channel.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        channel.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        channel.truncate(size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Moves the keystream to the channel position, which may have been changed by a seek or by
+     * the channel itself.
+     */
+    private void align() throws IOException {
+        if (!channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        final long position = channel.position();
+        if (position != cipher.position()) {
+            cipher.seek(position);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.johnhite.crypto.salsa20;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Encrypts everything written to it with ChaCha before writing it to a blocking channel.
+ *
+ * Data is encrypted into a direct buffer, so writes to a FileChannel or socket are not copied
+ * again by the JDK. The source buffer is left unchanged apart from its position.
+ */
+public class ChaChaWritableByteChannel implements WritableByteChannel {
+    static final int BUFFER_SIZE = 64 * 1024;
+    private final WritableByteChannel out;
+    private final ChaCha cipher;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public ChaChaWritableByteChannel(WritableByteChannel out, byte[] key, byte[] nonce) {
+        this.out = out;
+        this.cipher = new ChaCha(key, nonce);
+    }
+
+    /**
+     * Encrypts with a cipher created by the caller, e.g. from {@link XChaCha#cipher(byte[])}.
+     */
+    public ChaChaWritableByteChannel(WritableByteChannel out, ChaCha cipher) {
+        this.out = out;
+        this.cipher = cipher;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!out.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        return encryptTo(cipher, src, buffer, out);
+    }
+
+    /**
+     * Encrypts all of src through buffer into out. The keystream is consumed as soon as bytes are
+     * encrypted, so everything is written before returning even if out accepts partial writes.
+     */
+    static int encryptTo(ChaCha cipher, ByteBuffer src, ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        final int total = src.remaining();
+        final int limit = src.limit();
+        while (src.hasRemaining()) {
+            buffer.clear();
+            src.limit(src.position() + Math.min(src.remaining(), buffer.capacity()));
+            cipher.process(src, buffer);
+            src.limit(limit);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return out.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
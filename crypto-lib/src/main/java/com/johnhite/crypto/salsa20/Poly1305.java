@@ -0,0 +1,192 @@
+package com.johnhite.crypto.salsa20;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/*
+https://cr.yp.to/mac/poly1305-20050329.pdf
+https://tools.ietf.org/html/rfc8439#section-2.5
+
+Poly1305 one time authenticator. The 130 bit accumulator is kept in five 26 bit limbs so every
+partial product fits in a long, as in poly1305-donna.
+
+A key must only ever authenticate one message.
+ */
+public final class Poly1305 {
+    public static final int KEY_SIZE = 32;
+    public static final int TAG_SIZE = 16;
+    private static final VarHandle LE_INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int MASK = 0x3ffffff;
+
+    //r in 26 bit limbs, s = r * 5 for the limbs that wrap around 2^130
+    private int r0, r1, r2, r3, r4;
+    private int s1, s2, s3, s4;
+    //the s half of the key, added to the accumulator at the end
+    private int pad0, pad1, pad2, pad3;
+    private int h0, h1, h2, h3, h4;
+    private final byte[] block = new byte[16];
+    private int blockLength;
+
+    public Poly1305() {
+    }
+
+    public Poly1305(byte[] key) {
+        init(key, 0);
+    }
+
+    /**
+     * Starts a new message with the 32 byte one time key r || s at key[off].
+     */
+    public void init(byte[] key, int off) {
+        if (off < 0 || off > key.length - KEY_SIZE) {
+            throw new IllegalArgumentException("Poly1305 key must be 32 bytes");
+        }
+        final int t0 = (int) LE_INT.get(key, off);
+        final int t1 = (int) LE_INT.get(key, off + 4);
+        final int t2 = (int) LE_INT.get(key, off + 8);
+        final int t3 = (int) LE_INT.get(key, off + 12);
+        //r &= 0x0ffffffc0ffffffc0ffffffc0fffffff
+        r0 = t0 & 0x3ffffff;
+        r1 = ((t0 >>> 26) | (t1 << 6)) & 0x3ffff03;
+        r2 = ((t1 >>> 20) | (t2 << 12)) & 0x3ffc0ff;
+        r3 = ((t2 >>> 14) | (t3 << 18)) & 0x3f03fff;
+        r4 = (t3 >>> 8) & 0x00fffff;
+        s1 = r1 * 5;
+        s2 = r2 * 5;
+        s3 = r3 * 5;
+        s4 = r4 * 5;
+        pad0 = (int) LE_INT.get(key, off + 16);
+        pad1 = (int) LE_INT.get(key, off + 20);
+        pad2 = (int) LE_INT.get(key, off + 24);
+        pad3 = (int) LE_INT.get(key, off + 28);
+        h0 = h1 = h2 = h3 = h4 = 0;
+        blockLength = 0;
+    }
+
+    public void update(byte[] in, int off, int len) {
+        if (len < 0 || off < 0 || off > in.length - len) {
+            throw new IndexOutOfBoundsException("Input does not fit in buffer");
+        }
+        if (blockLength > 0) {
+            final int n = Math.min(len, 16 - blockLength);
+            System.arraycopy(in, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength < 16) {
+                return;
+            }
+            processBlock(block, 0, 1 << 24);
+            blockLength = 0;
+        }
+        while (len >= 16) {
+            processBlock(in, off, 1 << 24);
+            off += 16;
+            len -= 16;
+        }
+        System.arraycopy(in, off, block, 0, len);
+        blockLength = len;
+    }
+
+    /**
+     * Pads the message with zeros to a multiple of 16 bytes, as the AEAD construction requires
+     * between the additional data and the ciphertext.
+     */
+    public void pad() {
+        if (blockLength > 0) {
+            for (int i = blockLength; i < 16; i++) {
+                block[i] = 0;
+            }
+            processBlock(block, 0, 1 << 24);
+            blockLength = 0;
+        }
+    }
+
+    /**
+     * Writes the 16 byte tag to out at off. The authenticator must be initialized with a new key
+     * before it is used again.
+     */
+    public void doFinal(byte[] out, int off) {
+        if (blockLength > 0) {
+            //final partial block: 0x01 then zeros, without the 2^128 bit
+            block[blockLength] = 1;
+            for (int i = blockLength + 1; i < 16; i++) {
+                block[i] = 0;
+            }
+            processBlock(block, 0, 0);
+            blockLength = 0;
+        }
+
+        //fully carry h
+        int c = h1 >>> 26; h1 &= MASK;
+        h2 += c; c = h2 >>> 26; h2 &= MASK;
+        h3 += c; c = h3 >>> 26; h3 &= MASK;
+        h4 += c; c = h4 >>> 26; h4 &= MASK;
+        h0 += c * 5; c = h0 >>> 26; h0 &= MASK;
+        h1 += c;
+
+        //g = h + -p, selected in constant time if h >= p
+        int g0 = h0 + 5; c = g0 >>> 26; g0 &= MASK;
+        int g1 = h1 + c; c = g1 >>> 26; g1 &= MASK;
+        int g2 = h2 + c; c = g2 >>> 26; g2 &= MASK;
+        int g3 = h3 + c; c = g3 >>> 26; g3 &= MASK;
+        int g4 = h4 + c - (1 << 26);
+        int select = (g4 >>> 31) - 1;
+        h0 = (h0 & ~select) | (g0 & select);
+        h1 = (h1 & ~select) | (g1 & select);
+        h2 = (h2 & ~select) | (g2 & select);
+        h3 = (h3 & ~select) | (g3 & select);
+        h4 = (h4 & ~select) | (g4 & select);
+
+        //tag = (h + s) mod 2^128
+        final int w0 = h0 | (h1 << 26);
+        final int w1 = (h1 >>> 6) | (h2 << 20);
+        final int w2 = (h2 >>> 12) | (h3 << 14);
+        final int w3 = (h3 >>> 18) | (h4 << 8);
+        long f = (w0 & 0xffffffffL) + (pad0 & 0xffffffffL);
+        LE_INT.set(out, off, (int) f);
+        f = (w1 & 0xffffffffL) + (pad1 & 0xffffffffL) + (f >>> 32);
+        LE_INT.set(out, off + 4, (int) f);
+        f = (w2 & 0xffffffffL) + (pad2 & 0xffffffffL) + (f >>> 32);
+        LE_INT.set(out, off + 8, (int) f);
+        f = (w3 & 0xffffffffL) + (pad3 & 0xffffffffL) + (f >>> 32);
+        LE_INT.set(out, off + 12, (int) f);
+    }
+
+    public byte[] doFinal() {
+        final byte[] tag = new byte[TAG_SIZE];
+        doFinal(tag, 0);
+        return tag;
+    }
+
+    /**
+     * h = (h + m) * r mod 2^130 - 5, where hibit is the 2^128 bit of m.
+     */
+    private void processBlock(byte[] m, int off, int hibit) {
+        final long t0 = (int) LE_INT.get(m, off) & 0xffffffffL;
+        final long t1 = (int) LE_INT.get(m, off + 4) & 0xffffffffL;
+        final long t2 = (int) LE_INT.get(m, off + 8) & 0xffffffffL;
+        final long t3 = (int) LE_INT.get(m, off + 12) & 0xffffffffL;
+        h0 += (int) (t0 & MASK);
+        h1 += (int) (((t1 << 32) | t0) >>> 26 & MASK);
+        h2 += (int) (((t2 << 32) | t1) >>> 20 & MASK);
+        h3 += (int) (((t3 << 32) | t2) >>> 14 & MASK);
+        h4 += (int) (t3 >>> 8) | hibit;
+
+        final long d0 = (long) h0 * r0 + (long) h1 * s4 + (long) h2 * s3 + (long) h3 * s2 + (long) h4 * s1;
+        long d1 = (long) h0 * r1 + (long) h1 * r0 + (long) h2 * s4 + (long) h3 * s3 + (long) h4 * s2;
+        long d2 = (long) h0 * r2 + (long) h1 * r1 + (long) h2 * r0 + (long) h3 * s4 + (long) h4 * s3;
+        long d3 = (long) h0 * r3 + (long) h1 * r2 + (long) h2 * r1 + (long) h3 * r0 + (long) h4 * s4;
+        long d4 = (long) h0 * r4 + (long) h1 * r3 + (long) h2 * r2 + (long) h3 * r1 + (long) h4 * r0;
+
+        long c = d0 >>> 26; h0 = (int) d0 & MASK;
+        d1 += c; c = d1 >>> 26; h1 = (int) d1 & MASK;
+        d2 += c; c = d2 >>> 26; h2 = (int) d2 & MASK;
+        d3 += c; c = d3 >>> 26; h3 = (int) d3 & MASK;
+        d4 += c; c = d4 >>> 26; h4 = (int) d4 & MASK;
+        h0 += (int) c * 5;
+        h1 += h0 >>> 26;
+        h0 &= MASK;
+    }
+}
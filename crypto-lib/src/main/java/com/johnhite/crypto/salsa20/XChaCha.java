@@ -0,0 +1,146 @@
+package com.johnhite.crypto.salsa20;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+https://cr.yp.to/snuffle/xsalsa-20110204.pdf
+https://tools.ietf.org/html/draft-irtf-cfrg-xchacha-03
+
+XChaCha20 extends the ChaCha nonce to 24 bytes, large enough to be chosen at random. HChaCha20
+derives a subkey from the key and the first 16 nonce bytes, and ChaCha20 runs under the subkey
+with the last 8 nonce bytes.
+
+Any ChaCha wrapper (streams, channels, ChaChaFiles) accepts a 24 byte nonce and uses XChaCha20.
+An XChaCha instance bound to one key additionally caches the subkeys of recently used nonce
+prefixes, so nonces that share a prefix (e.g. a random per node prefix followed by a counter)
+skip HChaCha20.
+ */
+public final class XChaCha {
+    public static final int NONCE_SIZE = 24;
+    private static final VarHandle LE_INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LE_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final byte[] key;
+    private final Map<Prefix, byte[]> subkeys;
+
+    public XChaCha(byte[] key) {
+        this(key, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param key 32 byte key
+     * @param cacheSize number of nonce prefixes whose subkeys are kept, least recently used first out
+     */
+    public XChaCha(byte[] key, int cacheSize) {
+        if (key.length != 32) {
+            throw new IllegalArgumentException("ChaCha key must be 32 bytes");
+        }
+        this.key = key.clone();
+        this.subkeys = new LinkedHashMap<Prefix, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Prefix, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns a new XChaCha20 cipher for a 24 byte nonce. Safe to call from any thread.
+     */
+    public ChaCha cipher(byte[] nonce) {
+        if (nonce.length != NONCE_SIZE) {
+            throw new IllegalArgumentException("XChaCha nonce must be 24 bytes");
+        }
+        final Prefix prefix = new Prefix((long) LE_LONG.get(nonce, 0), (long) LE_LONG.get(nonce, 8));
+        byte[] subkey;
+        synchronized (subkeys) {
+            subkey = subkeys.get(prefix);
+        }
+        if (subkey == null) {
+            subkey = hchacha20(key, nonce);
+            synchronized (subkeys) {
+                subkeys.put(prefix, subkey);
+            }
+        }
+        return new ChaCha(subkey, nonce, 16);
+    }
+
+    /**
+     * HChaCha20: the ChaCha20 rounds over the key and the first 16 bytes of nonce, without the
+     * final addition, returning words 0-3 and 12-15 as a 32 byte subkey.
+     */
+    public static byte[] hchacha20(byte[] key, byte[] nonce) {
+        if (key.length != 32) {
+            throw new IllegalArgumentException("ChaCha key must be 32 bytes");
+        }
+        if (nonce.length < 16) {
+            throw new IllegalArgumentException("HChaCha nonce must be at least 16 bytes");
+        }
+        final int[] x = new int[16];
+        for (int i = 0; i < 4; i++) {
+            x[i] = (int) LE_INT.get(ChaCha.SIGMA, i * 4);
+        }
+        for (int i = 0; i < 8; i++) {
+            x[4 + i] = (int) LE_INT.get(key, i * 4);
+        }
+        for (int i = 0; i < 4; i++) {
+            x[12 + i] = (int) LE_INT.get(nonce, i * 4);
+        }
+        for (int i = 0; i < 10; i++) {
+            QR(x, 0, 4, 8, 12);
+            QR(x, 1, 5, 9, 13);
+            QR(x, 2, 6, 10, 14);
+            QR(x, 3, 7, 11, 15);
+
+            QR(x, 0, 5, 10, 15);
+            QR(x, 1, 6, 11, 12);
+            QR(x, 2, 7, 8, 13);
+            QR(x, 3, 4, 9, 14);
+        }
+        final byte[] subkey = new byte[32];
+        for (int i = 0; i < 4; i++) {
+            LE_INT.set(subkey, i * 4, x[i]);
+            LE_INT.set(subkey, 16 + i * 4, x[12 + i]);
+        }
+        return subkey;
+    }
+
+    private static void QR(int[] in, int a, int b, int c, int d) {
+        in[a] += in[b]; in[d] = Integer.rotateLeft(in[d] ^ in[a], 16);
+        in[c] += in[d]; in[b] = Integer.rotateLeft(in[b] ^ in[c], 12);
+        in[a] += in[b]; in[d] = Integer.rotateLeft(in[d] ^ in[a], 8);
+        in[c] += in[d]; in[b] = Integer.rotateLeft(in[b] ^ in[c], 7);
+    }
+
+    /**
+     * The first 16 bytes of a nonce.
+     */
+    private static final class Prefix {
+        private final long lo;
+        private final long hi;
+
+        Prefix(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Prefix)) {
+                return false;
+            }
+            final Prefix other = (Prefix) o;
+            return lo == other.lo && hi == other.hi;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(lo) * 31 + Long.hashCode(hi);
+        }
+    }
+}
@@ -43,6 +43,11 @@ public class MontgomeryCurve implements EllipticCurve {
         return p;
     }
 
+    //Curve25519 multiplies with the X25519 ladder
+    private boolean isCurve25519() {
+        return modulus().equals(Curve25519.P) && getA().equals(BigInteger.valueOf(486662)) && getB().equals(ONE);
+    }
+
     private BigInteger _inv(BigInteger x) {
         return zp.inv(x);
     }
@@ -185,6 +190,13 @@ public class MontgomeryCurve implements EllipticCurve {
 
         @Override
         public CurvePt mul(BigInteger scalar) {
+            if (isCurve25519()) {
+                if (scalar.signum() <= 0 || this.isInfinity()) {
+                    return this.getInfinity();
+                }
+                final BigInteger[] r = X25519.mul(scalar, getX(), getY());
+                return r == null ? this.getInfinity() : new AffinePt(curve, r[0], r[1]);
+            }
             CurvePt r = this.getInfinity();
             CurvePt p = this;
             for (BigInteger i = ONE; i.compareTo(scalar) <= 0; i = i.shiftLeft(1)) {
@@ -160,6 +160,14 @@ public class MontgomeryCurvePt implements CurvePt {
     }
 
     public CurvePt mul(BigInteger scalar) {
+        if (curve instanceof Curve25519) {
+            //constant time ladder on fixed limbs, one inversion in all
+            if (scalar.signum() <= 0 || this.equals(curve.infinity())) {
+                return curve.infinity();
+            }
+            final BigInteger[] r = X25519.mul(scalar, x, y);
+            return r == null ? curve.infinity() : new MontgomeryCurvePt(curve, r[0], r[1]);
+        }
         CurvePt r = curve.infinity();
         CurvePt p = this;
         for (BigInteger i = ONE; i.compareTo(scalar) <= 0; i = i.shiftLeft(1)) {
@@ -0,0 +1,413 @@
+package com.johnhite.crypto.schnorr;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Scalar multiplication on Curve25519 with the Montgomery ladder, as in RFC 7748.
+ *
+ * Field elements of GF(2^255 - 19) are 10 signed limbs of alternately 26 and 25 bits, so limb
+ * products fit in a long and reduction is a multiply by 19. The ladder works on projective
+ * (X:Z) coordinates and inverts once at the end. Every step runs the same operations and swaps
+ * its two points with a mask rather than a branch, so the time taken does not depend on the
+ * scalar.
+ */
+public final class X25519 {
+    public static final int KEY_SIZE = 32;
+    private static final int LIMBS = 10;
+    //(A - 2) / 4 for A = 486662
+    private static final int A24 = 121665;
+    private static final int A = 486662;
+    private static final byte[] BASE_POINT = new byte[KEY_SIZE];
+
+    static {
+        BASE_POINT[0] = 9;
+    }
+
+    private X25519() {
+    }
+
+    /**
+     * The X25519 function of RFC 7748: the u coordinate of the clamped scalar times the point
+     * with u coordinate u, both little endian.
+     */
+    public static byte[] scalarMult(byte[] scalar, byte[] u) {
+        if (scalar.length != KEY_SIZE || u.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Scalar and u coordinate must be " + KEY_SIZE + " bytes");
+        }
+        final byte[] k = scalar.clone();
+        k[0] &= (byte) 248;
+        k[31] &= 127;
+        k[31] |= 64;
+        final int[] x1 = fromBytes(u);
+        final int[][] r = ladder(k, 255, x1);
+        final int[] out = new int[LIMBS];
+        mul(out, r[0], invert(r[1]));
+        Arrays.fill(k, (byte) 0);
+        return toBytes(out);
+    }
+
+    /**
+     * The public key for a 32 byte private key, the X25519 of the base point.
+     */
+    public static byte[] publicKey(byte[] privateKey) {
+        return scalarMult(privateKey, BASE_POINT);
+    }
+
+    /**
+     * Affine scalar * (x, y) on y^2 = x^3 + 486662x^2 + x, with y recovered from the ladder's two
+     * points as in Okeya and Sakurai.
+     *
+     * @param scalar positive, not clamped
+     * @return {x, y}, or null for the point at infinity
+     */
+    static BigInteger[] mul(BigInteger scalar, BigInteger x, BigInteger y) {
+        final int bits = Math.max(256, scalar.bitLength());
+        final byte[] k = new byte[(bits + 7) / 8];
+        final byte[] be = scalar.toByteArray();
+        for (int i = 0; i < be.length && i < k.length; i++) {
+            k[i] = be[be.length - 1 - i];
+        }
+        final int[] px = fromBigInteger(x);
+        final int[] py = fromBigInteger(y);
+        final int[][] r = ladder(k, bits, px);
+        //r = {X1, Z1, X2, Z2}, scalar * P and (scalar + 1) * P
+        final int[] x1 = r[0];
+        final int[] z1 = r[1];
+        final int[] x2 = r[2];
+        final int[] z2 = r[3];
+        if (isZero(z1)) {
+            return null;
+        }
+        if (isZero(py)) {
+            //P has order 2, the ladder's second point is infinity whenever the first is not
+            return new BigInteger[] {x, y};
+        }
+        if (isZero(z2)) {
+            //scalar * P = -P
+            return new BigInteger[] {x, y.signum() == 0 ? y : Curve25519.P.subtract(y)};
+        }
+        final int[] v1 = new int[LIMBS];
+        final int[] v2 = new int[LIMBS];
+        final int[] v3 = new int[LIMBS];
+        final int[] v4 = new int[LIMBS];
+        final int[] t = new int[LIMBS];
+        mul(v1, px, z1);
+        add(v2, x1, v1);
+        sub(t, x1, v1);
+        square(v3, t);
+        mul(v3, v3, x2);
+        mulSmall(v1, z1, 2 * A);
+        add(t, v2, v1);
+        carry(t, t);
+        mul(v4, px, x1);
+        add(v4, v4, z1);
+        mul(v2, t, v4);
+        mul(v1, v1, z1);
+        sub(t, v2, v1);
+        mul(v2, t, z2);
+        //y' = v2 - v3
+        sub(t, v2, v3);
+        final int[] yr = new int[LIMBS];
+        carry(yr, t);
+        //Z' = 2y * Z1^2 * Z2, X' = 2y * Z1 * Z2 * X1
+        add(v1, py, py);
+        mul(v1, v1, z1);
+        mul(v1, v1, z2);
+        final int[] xr = new int[LIMBS];
+        mul(xr, v1, x1);
+        final int[] zr = new int[LIMBS];
+        mul(zr, v1, z1);
+        final int[] zi = invert(zr);
+        mul(xr, xr, zi);
+        mul(yr, yr, zi);
+        return new BigInteger[] {toBigInteger(xr), toBigInteger(yr)};
+    }
+
+    /**
+     * The ladder over the low bits of little endian k. Returns {X2, Z2, X3, Z3}: k * P and
+     * (k + 1) * P in projective coordinates.
+     */
+    private static int[][] ladder(byte[] k, int bits, int[] x1) {
+        final int[] x2 = new int[LIMBS];
+        final int[] z2 = new int[LIMBS];
+        final int[] x3 = x1.clone();
+        final int[] z3 = new int[LIMBS];
+        x2[0] = 1;
+        z3[0] = 1;
+        final int[] a = new int[LIMBS];
+        final int[] aa = new int[LIMBS];
+        final int[] b = new int[LIMBS];
+        final int[] bb = new int[LIMBS];
+        final int[] e = new int[LIMBS];
+        final int[] c = new int[LIMBS];
+        final int[] d = new int[LIMBS];
+        final int[] da = new int[LIMBS];
+        final int[] cb = new int[LIMBS];
+        final int[] t = new int[LIMBS];
+        int swap = 0;
+        for (int i = bits - 1; i >= 0; i--) {
+            final int bit = (k[i >>> 3] >>> (i & 7)) & 1;
+            swap ^= bit;
+            cswap(x2, x3, swap);
+            cswap(z2, z3, swap);
+            swap = bit;
+
+            add(a, x2, z2);
+            square(aa, a);
+            sub(b, x2, z2);
+            square(bb, b);
+            sub(e, aa, bb);
+            add(c, x3, z3);
+            sub(d, x3, z3);
+            mul(da, d, a);
+            mul(cb, c, b);
+            add(t, da, cb);
+            square(x3, t);
+            sub(t, da, cb);
+            square(t, t);
+            mul(z3, x1, t);
+            mul(x2, aa, bb);
+            mulSmall(t, e, A24);
+            add(t, aa, t);
+            mul(z2, e, t);
+        }
+        cswap(x2, x3, swap);
+        cswap(z2, z3, swap);
+        return new int[][] {x2, z2, x3, z3};
+    }
+
+    //limb i starts at bit ceil(25.5 * i) and holds 26 bits when i is even, 25 when odd
+    private static int width(int i) {
+        return 26 - (i & 1);
+    }
+
+    private static void add(int[] h, int[] f, int[] g) {
+        for (int i = 0; i < LIMBS; i++) {
+            h[i] = f[i] + g[i];
+        }
+    }
+
+    private static void sub(int[] h, int[] f, int[] g) {
+        for (int i = 0; i < LIMBS; i++) {
+            h[i] = f[i] - g[i];
+        }
+    }
+
+    /**
+     * h = f * g. Inputs are carried limbs or the sum or difference of two, under 2^27 in magnitude,
+     * so no column of products passes 2^63. h may be f or g. Products of two odd limbs land one
+     * bit past their position and are doubled, products past 2^255 are folded back times 19.
+     */
+    private static void mul(int[] h, int[] f, int[] g) {
+        final long f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4], f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8], f9 = f[9];
+        final long g0 = g[0], g1 = g[1], g2 = g[2], g3 = g[3], g4 = g[4], g5 = g[5], g6 = g[6], g7 = g[7], g8 = g[8], g9 = g[9];
+        final long g1_19 = 19 * g1, g2_19 = 19 * g2, g3_19 = 19 * g3, g4_19 = 19 * g4, g5_19 = 19 * g5, g6_19 = 19 * g6, g7_19 = 19 * g7, g8_19 = 19 * g8, g9_19 = 19 * g9;
+        final long f1_2 = 2 * f1, f3_2 = 2 * f3, f5_2 = 2 * f5, f7_2 = 2 * f7, f9_2 = 2 * f9;
+        final long h0 = f0 * g0 + f1_2 * g9_19 + f2 * g8_19 + f3_2 * g7_19 + f4 * g6_19 + f5_2 * g5_19 + f6 * g4_19 + f7_2 * g3_19 + f8 * g2_19 + f9_2 * g1_19;
+        final long h1 = f0 * g1 + f1 * g0 + f2 * g9_19 + f3 * g8_19 + f4 * g7_19 + f5 * g6_19 + f6 * g5_19 + f7 * g4_19 + f8 * g3_19 + f9 * g2_19;
+        final long h2 = f0 * g2 + f1_2 * g1 + f2 * g0 + f3_2 * g9_19 + f4 * g8_19 + f5_2 * g7_19 + f6 * g6_19 + f7_2 * g5_19 + f8 * g4_19 + f9_2 * g3_19;
+        final long h3 = f0 * g3 + f1 * g2 + f2 * g1 + f3 * g0 + f4 * g9_19 + f5 * g8_19 + f6 * g7_19 + f7 * g6_19 + f8 * g5_19 + f9 * g4_19;
+        final long h4 = f0 * g4 + f1_2 * g3 + f2 * g2 + f3_2 * g1 + f4 * g0 + f5_2 * g9_19 + f6 * g8_19 + f7_2 * g7_19 + f8 * g6_19 + f9_2 * g5_19;
+        final long h5 = f0 * g5 + f1 * g4 + f2 * g3 + f3 * g2 + f4 * g1 + f5 * g0 + f6 * g9_19 + f7 * g8_19 + f8 * g7_19 + f9 * g6_19;
+        final long h6 = f0 * g6 + f1_2 * g5 + f2 * g4 + f3_2 * g3 + f4 * g2 + f5_2 * g1 + f6 * g0 + f7_2 * g9_19 + f8 * g8_19 + f9_2 * g7_19;
+        final long h7 = f0 * g7 + f1 * g6 + f2 * g5 + f3 * g4 + f4 * g3 + f5 * g2 + f6 * g1 + f7 * g0 + f8 * g9_19 + f9 * g8_19;
+        final long h8 = f0 * g8 + f1_2 * g7 + f2 * g6 + f3_2 * g5 + f4 * g4 + f5_2 * g3 + f6 * g2 + f7_2 * g1 + f8 * g0 + f9_2 * g9_19;
+        final long h9 = f0 * g9 + f1 * g8 + f2 * g7 + f3 * g6 + f4 * g5 + f5 * g4 + f6 * g3 + f7 * g2 + f8 * g1 + f9 * g0;
+        carry(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+    }
+
+    private static void square(int[] h, int[] f) {
+        final long f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4], f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8], f9 = f[9];
+        final long h0 = f0 * f0 + 76 * f1 * f9 + 38 * f2 * f8 + 76 * f3 * f7 + 38 * f4 * f6 + 38 * f5 * f5;
+        final long h1 = 2 * f0 * f1 + 38 * f2 * f9 + 38 * f3 * f8 + 38 * f4 * f7 + 38 * f5 * f6;
+        final long h2 = 2 * f0 * f2 + 2 * f1 * f1 + 76 * f3 * f9 + 38 * f4 * f8 + 76 * f5 * f7 + 19 * f6 * f6;
+        final long h3 = 2 * f0 * f3 + 2 * f1 * f2 + 38 * f4 * f9 + 38 * f5 * f8 + 38 * f6 * f7;
+        final long h4 = 2 * f0 * f4 + 4 * f1 * f3 + f2 * f2 + 76 * f5 * f9 + 38 * f6 * f8 + 38 * f7 * f7;
+        final long h5 = 2 * f0 * f5 + 2 * f1 * f4 + 2 * f2 * f3 + 38 * f6 * f9 + 38 * f7 * f8;
+        final long h6 = 2 * f0 * f6 + 4 * f1 * f5 + 2 * f2 * f4 + 2 * f3 * f3 + 76 * f7 * f9 + 19 * f8 * f8;
+        final long h7 = 2 * f0 * f7 + 2 * f1 * f6 + 2 * f2 * f5 + 2 * f3 * f4 + 38 * f8 * f9;
+        final long h8 = 2 * f0 * f8 + 4 * f1 * f7 + 2 * f2 * f6 + 4 * f3 * f5 + f4 * f4 + 38 * f9 * f9;
+        final long h9 = 2 * f0 * f9 + 2 * f1 * f8 + 2 * f2 * f7 + 2 * f3 * f6 + 2 * f4 * f5;
+        carry(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+    }
+
+    private static void mulSmall(int[] h, int[] f, long n) {
+        carry(h, f[0] * n, f[1] * n, f[2] * n, f[3] * n, f[4] * n, f[5] * n, f[6] * n, f[7] * n, f[8] * n, f[9] * n);
+    }
+
+    private static void carry(int[] h, int[] f) {
+        carry(h, f[0], f[1], f[2], f[3], f[4], f[5], f[6], f[7], f[8], f[9]);
+    }
+
+    /**
+     * Rounds every limb into about half its width, pushing the excess up, and the excess of the
+     * top limb times 19 back to the bottom.
+     */
+    private static void carry(int[] h, long h0, long h1, long h2, long h3, long h4, long h5, long h6, long h7, long h8, long h9) {
+        long c;
+        c = (h0 + (1L << 25)) >> 26; h1 += c; h0 -= c << 26;
+        c = (h1 + (1L << 24)) >> 25; h2 += c; h1 -= c << 25;
+        c = (h2 + (1L << 25)) >> 26; h3 += c; h2 -= c << 26;
+        c = (h3 + (1L << 24)) >> 25; h4 += c; h3 -= c << 25;
+        c = (h4 + (1L << 25)) >> 26; h5 += c; h4 -= c << 26;
+        c = (h5 + (1L << 24)) >> 25; h6 += c; h5 -= c << 25;
+        c = (h6 + (1L << 25)) >> 26; h7 += c; h6 -= c << 26;
+        c = (h7 + (1L << 24)) >> 25; h8 += c; h7 -= c << 25;
+        c = (h8 + (1L << 25)) >> 26; h9 += c; h8 -= c << 26;
+        c = (h9 + (1L << 24)) >> 25; h0 += 19 * c; h9 -= c << 25;
+        c = (h0 + (1L << 25)) >> 26; h1 += c; h0 -= c << 26;
+        h[0] = (int) h0;
+        h[1] = (int) h1;
+        h[2] = (int) h2;
+        h[3] = (int) h3;
+        h[4] = (int) h4;
+        h[5] = (int) h5;
+        h[6] = (int) h6;
+        h[7] = (int) h7;
+        h[8] = (int) h8;
+        h[9] = (int) h9;
+    }
+
+    private static void cswap(int[] f, int[] g, int swap) {
+        final int mask = -swap;
+        for (int i = 0; i < LIMBS; i++) {
+            final int t = mask & (f[i] ^ g[i]);
+            f[i] ^= t;
+            g[i] ^= t;
+        }
+    }
+
+    private static void square(int[] h, int[] f, int times) {
+        square(h, f);
+        for (int i = 1; i < times; i++) {
+            square(h, h);
+        }
+    }
+
+    /**
+     * z^(p - 2) = 1/z, 254 squarings and 11 multiplications.
+     */
+    private static int[] invert(int[] z) {
+        final int[] t0 = new int[LIMBS];
+        final int[] t1 = new int[LIMBS];
+        final int[] t2 = new int[LIMBS];
+        final int[] t3 = new int[LIMBS];
+        square(t0, z, 1);
+        square(t1, t0, 2);
+        mul(t1, z, t1);
+        mul(t0, t0, t1);
+        square(t2, t0, 1);
+        //z^(2^5 - 1)
+        mul(t1, t1, t2);
+        square(t2, t1, 5);
+        mul(t1, t2, t1);
+        square(t2, t1, 10);
+        mul(t2, t2, t1);
+        square(t3, t2, 20);
+        mul(t2, t3, t2);
+        square(t2, t2, 10);
+        //z^(2^50 - 1)
+        mul(t1, t2, t1);
+        square(t2, t1, 50);
+        mul(t2, t2, t1);
+        square(t3, t2, 100);
+        mul(t2, t3, t2);
+        square(t2, t2, 50);
+        //z^(2^250 - 1)
+        mul(t1, t2, t1);
+        square(t1, t1, 5);
+        //z^(2^255 - 32 + 11)
+        final int[] out = new int[LIMBS];
+        mul(out, t1, t0);
+        return out;
+    }
+
+    private static boolean isZero(int[] f) {
+        int acc = 0;
+        for (byte b : toBytes(f)) {
+            acc |= b;
+        }
+        return acc == 0;
+    }
+
+    /**
+     * Little endian, the top bit ignored as RFC 7748 asks. Values from p to 2^255 - 1 are kept
+     * as they are, the arithmetic does not need them reduced.
+     */
+    private static int[] fromBytes(byte[] s) {
+        final int[] h = new int[LIMBS];
+        long acc = 0;
+        int accBits = 0;
+        int pos = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            final int w = width(i);
+            while (accBits < w) {
+                final int b = pos == 31 ? s[pos] & 0x7F : s[pos] & 0xFF;
+                acc |= (long) b << accBits;
+                accBits += 8;
+                pos++;
+            }
+            h[i] = (int) (acc & ((1L << w) - 1));
+            acc >>>= w;
+            accBits -= w;
+        }
+        return h;
+    }
+
+    /**
+     * The unique little endian encoding of f mod p.
+     */
+    private static byte[] toBytes(int[] f) {
+        final int[] h = new int[LIMBS];
+        carry(h, f);
+        //q = 1 when h >= p, found by carrying h + 19 through the limbs
+        int q = (19 * h[9] + (1 << 24)) >> 25;
+        for (int i = 0; i < LIMBS; i++) {
+            q = (h[i] + q) >> width(i);
+        }
+        h[0] += 19 * q;
+        //floor carries leave every limb in [0, 2^width), dropping 2^255 from the top
+        for (int i = 0; i < LIMBS; i++) {
+            final int w = width(i);
+            final int c = h[i] >> w;
+            h[i] -= c << w;
+            if (i < LIMBS - 1) {
+                h[i + 1] += c;
+            }
+        }
+        final byte[] s = new byte[KEY_SIZE];
+        long acc = 0;
+        int accBits = 0;
+        int pos = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            acc |= (long) h[i] << accBits;
+            accBits += width(i);
+            while (accBits >= 8) {
+                s[pos++] = (byte) acc;
+                acc >>>= 8;
+                accBits -= 8;
+            }
+        }
+        s[pos] = (byte) acc;
+        return s;
+    }
+
+    private static int[] fromBigInteger(BigInteger x) {
+        final byte[] be = x.mod(Curve25519.P).toByteArray();
+        final byte[] le = new byte[KEY_SIZE];
+        for (int i = 0; i < be.length && i < KEY_SIZE; i++) {
+            le[i] = be[be.length - 1 - i];
+        }
+        return fromBytes(le);
+    }
+
+    private static BigInteger toBigInteger(int[] f) {
+        final byte[] le = toBytes(f);
+        final byte[] be = new byte[KEY_SIZE];
+        for (int i = 0; i < KEY_SIZE; i++) {
+            be[i] = le[KEY_SIZE - 1 - i];
+        }
+        return new BigInteger(1, be);
+    }
+}
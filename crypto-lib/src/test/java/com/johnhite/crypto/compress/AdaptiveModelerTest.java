@@ -0,0 +1,94 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+import com.johnhite.crypto.compress.ArithmeticCoder.Symbol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AdaptiveModelerTest {
+
+    @Test
+    public void testCounts() {
+        Random rand = new Random(1);
+        for (int symbols : new int[] {1, 2, 3, 256, 257}) {
+            //the smallest scale allowed needs several halvings after an increment
+            for (int maxScale : new int[] {1 << 12, 2 * symbols}) {
+                AdaptiveModeler model = new AdaptiveModeler(symbols, maxScale);
+                int[] freq = new int[symbols];
+                Arrays.fill(freq, 1);
+                for (int i = 0; i < 2000; i++) {
+                    //skewed towards the low symbols so rescaling kicks in
+                    int updated = Math.min(symbols - 1, Math.abs((int) (rand.nextGaussian() * 8)));
+                    model.update(updated);
+                    freq[updated] += AdaptiveModeler.INCREMENT;
+                    int total = 0;
+                    for (int f : freq) {
+                        total += f;
+                    }
+                    while (total > maxScale) {
+                        total = 0;
+                        for (int s = 0; s < symbols; s++) {
+                            freq[s] = (freq[s] + 1) / 2;
+                            total += freq[s];
+                        }
+                    }
+                    assertEquals(total, model.getScale());
+
+                    int low = 0;
+                    for (int s = 0; s < symbols; s++) {
+                        Symbol sym = model.getSymbol(s);
+                        assertEquals(low, sym.lowCount);
+                        assertEquals(low + freq[s], sym.highCount);
+                        assertEquals(s, model.getSymbolFromCount(low));
+                        assertEquals(s, model.getSymbolFromCount(low + freq[s] - 1));
+                        low += freq[s];
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random rand = new Random(2);
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            //the distribution changes half way through
+            data[i] = (byte) (i < data.length / 2 ? 'a' + rand.nextInt(4) : rand.nextInt(256));
+        }
+        for (EntropyCoder coder : new EntropyCoder[] {new ArithmeticCoder(), new RangeCoder()}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BitIO out = new BitIO(bytes);
+            coder.initializeEncoder();
+            AdaptiveModeler modeler = new AdaptiveModeler(new ByteArrayInputStream(data));
+            for (Symbol s : modeler) {
+                coder.encodeSymbol(s, out);
+            }
+            coder.flushEncoder(out);
+            out.flush();
+            assertEquals(data.length, modeler.getBytesProcessed());
+            //2 bits per byte for the first half and 8 for the second, 62.5% at best
+            assertTrue(bytes.size() < data.length * 66 / 100);
+
+            BitIO in = new BitIO(new ByteArrayInputStream(bytes.toByteArray()));
+            coder.initializeDecoder(in);
+            modeler = new AdaptiveModeler();
+            byte[] decoded = new byte[data.length];
+            for (int i = 0; i < decoded.length; i++) {
+                int count = coder.getCurrentCount(new Symbol(0, 0, modeler.getScale()));
+                Map.Entry<Byte, Symbol> entry = modeler.getEntryFromCount(count);
+                coder.removeSymbolFromStream(entry.getValue(), in);
+                decoded[i] = entry.getKey();
+            }
+            assertArrayEquals(coder.getClass().getSimpleName(), data, decoded);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+import com.johnhite.crypto.compress.ArithmeticCoder.Symbol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ArithmeticCoderTest {
+
+    @Test
+    public void testBitIO() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        for (int i = 0; i < 14; i++) {
+            out.outputBit(i % 2);
+        }
+        out.flush();
+        assertArrayEquals(new byte[] {0x55, 0x54}, bytes.toByteArray());
+
+        BitIO in = new BitIO(new ByteArrayInputStream(new byte[] {(byte) 0x0F, (byte) 0xA0}));
+        assertEquals(0x0FA0, in.readBits(16));
+        //past the end every bit is 1
+        assertEquals(1, in.inputBit());
+        assertEquals(0xFFFFFFFF, in.readBits(32));
+    }
+
+    @Test
+    public void testBitsRoundTrip() throws Exception {
+        Random rand = new Random(7);
+        int n = 100000;
+        int[] values = new int[n];
+        int[] counts = new int[n];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        for (int i = 0; i < n; i++) {
+            counts[i] = rand.nextInt(33);
+            values[i] = rand.nextInt();
+            if (counts[i] == 1 && rand.nextBoolean()) {
+                out.outputBit(values[i] & 1);
+            } else {
+                out.writeBits(values[i], counts[i]);
+            }
+        }
+        out.flush();
+
+        BitIO in = new BitIO(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < n; i++) {
+            int mask = counts[i] == 32 ? -1 : (1 << counts[i]) - 1;
+            int read = counts[i] == 1 && rand.nextBoolean() ? in.inputBit() : in.readBits(counts[i]);
+            assertEquals("value " + i, values[i] & mask, read);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random rand = new Random(11);
+        //8 frequent symbols and 248 rare ones
+        int[] cumulative = new int[257];
+        for (int i = 0; i < 256; i++) {
+            cumulative[i + 1] = cumulative[i] + (i < 8 ? 2000 : 1 + rand.nextInt(20));
+        }
+        int scale = cumulative[256];
+        for (int n : new int[] {1, 2, 3, 100, 50000}) {
+            int[] symbols = new int[n];
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BitIO out = new BitIO(bytes);
+            ArithmeticCoder coder = new ArithmeticCoder();
+            coder.initializeEncoder();
+            for (int i = 0; i < n; i++) {
+                symbols[i] = rand.nextInt(10) < 8 ? rand.nextInt(8) : rand.nextInt(256);
+                coder.encodeSymbol(new Symbol(cumulative[symbols[i]], cumulative[symbols[i] + 1], scale), out);
+            }
+            coder.flushEncoder(out);
+            out.flush();
+
+            BitIO in = new BitIO(new ByteArrayInputStream(bytes.toByteArray()));
+            coder = new ArithmeticCoder();
+            coder.initializeDecoder(in);
+            Symbol symScale = new Symbol(0, 0, scale);
+            for (int i = 0; i < n; i++) {
+                int count = coder.getCurrentCount(symScale);
+                int s = 0;
+                while (cumulative[s + 1] <= count) {
+                    s++;
+                }
+                assertEquals("symbol " + i + " of " + n, symbols[i], s);
+                coder.removeSymbolFromStream(new Symbol(cumulative[s], cumulative[s + 1], scale), in);
+            }
+        }
+    }
+}
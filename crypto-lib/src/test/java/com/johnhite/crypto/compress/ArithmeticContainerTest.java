@@ -0,0 +1,123 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ArithmeticContainerTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(3000, 1);
+        Path plain = Files.createTempFile("container", ".plain");
+        Path compressed = Files.createTempFile("container", ".acz");
+        Path decompressed = Files.createTempFile("container", ".dec");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.write(plain, data);
+            //many blocks and a partial last one
+            ArithmeticContainer.compress(plain, compressed, Engine.RANGE, 3, 20000, pool);
+            assertTrue(Files.size(compressed) < data.length / 4);
+            ArithmeticContainer.decompress(compressed, decompressed, pool);
+            assertArrayEquals(data, Files.readAllBytes(decompressed));
+
+            //the container is also a plain compressed stream
+            try (InputStream in = new ArithmeticDecompressingInputStream(Files.newInputStream(compressed))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+                assertArrayEquals(data, out.toByteArray());
+            }
+
+            //random access
+            try (ArithmeticContainer container = ArithmeticContainer.open(compressed)) {
+                assertEquals(data.length, container.length());
+                assertEquals((data.length + 19999) / 20000, container.getBlockCount());
+                assertArrayEquals(Arrays.copyOfRange(data, 40000, 60000), container.readBlock(2));
+                Random rand = new Random(1);
+                for (int i = 0; i < 20; i++) {
+                    int position = rand.nextInt(data.length);
+                    byte[] b = new byte[rand.nextInt(50000)];
+                    int read = container.read(position, b, 0, b.length);
+                    assertEquals(Math.min(b.length, data.length - position), read);
+                    assertArrayEquals(Arrays.copyOfRange(data, position, position + read), Arrays.copyOf(b, read));
+                }
+                assertEquals(-1, container.read(data.length, new byte[1], 0, 1));
+            }
+
+            //empty input
+            Files.write(plain, new byte[0]);
+            ArithmeticContainer.compress(plain, compressed);
+            ArithmeticContainer.decompress(compressed, decompressed);
+            assertEquals(0, Files.size(decompressed));
+        } finally {
+            pool.shutdown();
+            Files.delete(plain);
+            Files.delete(compressed);
+            Files.delete(decompressed);
+        }
+    }
+
+    @Test
+    public void testNoIndex() throws Exception {
+        //a plain stream has no index
+        Path file = Files.createTempFile("container", ".acz");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ArithmeticCompressingOutputStream out = new ArithmeticCompressingOutputStream(bytes)) {
+                out.write(ModelerPPMTest.jsonLog(10, 2));
+            }
+            Files.write(file, bytes.toByteArray());
+            try {
+                ArithmeticContainer.open(file).close();
+                fail("Expected an IOException");
+            } catch (IOException expected) {
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testScaling() throws Exception {
+        Path plain = Files.createTempFile("container", ".plain");
+        Path compressed = Files.createTempFile("container", ".acz");
+        Path decompressed = Files.createTempFile("container", ".dec");
+        try {
+            Files.write(plain, ModelerPPMTest.jsonLog(200000, 3));
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long start = System.nanoTime();
+                ArithmeticContainer.compress(plain, compressed, Engine.RANGE, 4, 1 << 20, pool);
+                long encoded = System.nanoTime();
+                ArithmeticContainer.decompress(compressed, decompressed, pool);
+                long decoded = System.nanoTime();
+                pool.shutdown();
+                System.out.printf("threads=%d: compress %.1f MB/s, decompress %.1f MB/s%n", threads,
+                        Files.size(plain) / ((encoded - start) / 1e9) / 1e6, Files.size(plain) / ((decoded - encoded) / 1e9) / 1e6);
+                if (threads == cores) {
+                    break;
+                }
+            }
+        } finally {
+            Files.delete(plain);
+            Files.delete(compressed);
+            Files.delete(decompressed);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.salsa20.ChaChaInputStream;
+import com.johnhite.crypto.salsa20.ChaChaOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ArithmeticStreamTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(500, 1);
+        for (Engine engine : Engine.values()) {
+            for (int order : new int[] {0, 1, 4}) {
+                for (int blockSize : new int[] {1, 1000, data.length, 1 << 20}) {
+                    byte[] compressed = compress(data, engine, order, blockSize);
+                    String config = engine + ", order " + order + ", blocks of " + blockSize;
+                    assertArrayEquals(config, data, readAll(new ArithmeticDecompressingInputStream(new ByteArrayInputStream(compressed))));
+                    if (order > 0 && blockSize >= data.length) {
+                        assertTrue(config, compressed.length < data.length / 2);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyAndFlush() throws Exception {
+        byte[] compressed = compress(new byte[0], Engine.RANGE, 4, 1000);
+        assertEquals(CompressedFormat.HEADER_SIZE + 4, compressed.length);
+        assertEquals(-1, new ArithmeticDecompressingInputStream(new ByteArrayInputStream(compressed)).read());
+
+        //everything written before a flush can be read before the stream is finished
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ArithmeticCompressingOutputStream out = new ArithmeticCompressingOutputStream(bytes);
+        out.write("hello ".getBytes());
+        out.flush();
+        out.flush();
+        InputStream in = new ArithmeticDecompressingInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] hello = new byte[6];
+        assertEquals(6, in.read(hello));
+        assertEquals("hello ", new String(hello));
+        out.write("world".getBytes());
+        out.close();
+        assertEquals("hello world", new String(readAll(new ArithmeticDecompressingInputStream(new ByteArrayInputStream(bytes.toByteArray())))));
+    }
+
+    @Test
+    public void testCompressThenEncrypt() throws Exception {
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        new Random(9).nextBytes(key);
+        byte[] data = ModelerPPMTest.jsonLog(2000, 2);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ArithmeticCompressingOutputStream(new ChaChaOutputStream(bytes, key, nonce))) {
+            out.write(data);
+        }
+        try (InputStream in = new ArithmeticDecompressingInputStream(new ChaChaInputStream(new ByteArrayInputStream(bytes.toByteArray()), key, nonce))) {
+            //one byte at a time
+            for (int i = 0; i < data.length; i++) {
+                assertEquals(data[i] & 0xFF, in.read());
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testCorruption() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(200, 3);
+        byte[] compressed = compress(data, Engine.RANGE, 4, 4096);
+        expectIOException(Arrays.copyOf(compressed, compressed.length - 2));
+        expectIOException(Arrays.copyOf(compressed, 5));
+        byte[] magic = compressed.clone();
+        magic[0] = 'X';
+        expectIOException(magic);
+        //a changed byte in the first block either breaks the END symbol or the length check, or
+        //decodes to different data
+        Random rand = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            byte[] corrupt = compressed.clone();
+            corrupt[CompressedFormat.HEADER_SIZE + CompressedFormat.BLOCK_HEADER_SIZE + rand.nextInt(500)] ^= 1 << rand.nextInt(8);
+            try {
+                assertFalse(Arrays.equals(data, readAll(new ArithmeticDecompressingInputStream(new ByteArrayInputStream(corrupt)))));
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private static void expectIOException(byte[] compressed) {
+        try {
+            readAll(new ArithmeticDecompressingInputStream(new ByteArrayInputStream(compressed)));
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] compress(byte[] data, Engine engine, int order, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ArithmeticCompressingOutputStream(bytes, engine, order, blockSize)) {
+            //uneven writes
+            for (int off = 0; off < data.length; ) {
+                int len = Math.min(data.length - off, 1 + off % 777);
+                out.write(data, off, len);
+                off += len;
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
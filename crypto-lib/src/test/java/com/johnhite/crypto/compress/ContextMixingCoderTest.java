@@ -0,0 +1,93 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ContextMixingCoderTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(1000, 1);
+        for (int order = 0; order <= ContextMixingCoder.MAX_ORDER; order++) {
+            //a small table collides constantly, which must not matter to correctness
+            for (int tableBits : new int[] {8, ContextMixingCoder.DEFAULT_TABLE_BITS}) {
+                ContextMixingCoder coder = new ContextMixingCoder(order, tableBits);
+                assertArrayEquals("order " + order + ", " + tableBits + " bits", data, decompress(compress(data, coder), coder));
+            }
+        }
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        Random rand = new Random(4);
+        byte[] data = new byte[20000];
+        rand.nextBytes(data);
+        System.arraycopy(data, 0, data, 10000, 5000);
+        ContextMixingCoder coder = new ContextMixingCoder(4);
+        byte[] compressed = compress(data, coder);
+        assertArrayEquals(data, decompress(compressed, coder));
+        //random bytes cost little more than 8 bits
+        assertTrue(compressed.length + " bytes", compressed.length < data.length * 101 / 100);
+
+        byte[] zeros = new byte[100000];
+        assertArrayEquals(zeros, decompress(compress(zeros, coder), coder));
+        assertTrue(compress(zeros, coder).length < 100);
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], coder), coder));
+    }
+
+    @Test
+    public void testBetterThanPPM() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(2000, 3);
+        int cm = compress(data, new ContextMixingCoder(4)).length;
+        CompressedFormat format = new CompressedFormat(Engine.RANGE, 4, data.length);
+        int ppm = format.encodeBlock(format.newCodec(), data, 0, data.length).length - CompressedFormat.BLOCK_HEADER_SIZE;
+        assertTrue(cm + " vs " + ppm, cm < ppm);
+    }
+
+    @Ignore
+    @Test
+    public void testRatio() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(50000, 5);
+        for (int order = 0; order <= ContextMixingCoder.MAX_ORDER; order++) {
+            ContextMixingCoder coder = new ContextMixingCoder(order);
+            long start = System.nanoTime();
+            byte[] compressed = compress(data, coder);
+            long encoded = System.nanoTime();
+            decompress(compressed, coder);
+            long decoded = System.nanoTime();
+            System.out.printf("order %d: %d -> %d bytes (%.2f bpc), encode %.0f ms, decode %.0f ms%n", order, data.length, compressed.length,
+                    8.0 * compressed.length / data.length, (encoded - start) / 1e6, (decoded - encoded) / 1e6);
+        }
+    }
+
+    private static byte[] compress(byte[] data, ContextMixingCoder coder) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        coder.initializeEncoder();
+        for (byte b : data) {
+            coder.encode(b & 0xFF, out);
+        }
+        coder.encode(ModelerPPM.END, out);
+        coder.flushEncoder(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, ContextMixingCoder coder) throws Exception {
+        BitIO in = new BitIO(new ByteArrayInputStream(compressed));
+        coder.initializeDecoder(in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b = coder.decode(in); b != ModelerPPM.END; b = coder.decode(in)) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,129 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testCounts() throws Exception {
+        //several chunks, so counts are merged across tasks and order-1 contexts cross chunk boundaries
+        byte[] data = new byte[5 * 1024 * 1024 + 17];
+        Random rand = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (rand.nextInt(200) * rand.nextInt(3));
+        }
+        long[] order0 = new long[256];
+        long[] order1 = new long[65536];
+        int previous = 0;
+        for (byte b : data) {
+            order0[b & 0xFF]++;
+            order1[(previous << 8) | (b & 0xFF)]++;
+            previous = b & 0xFF;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(order0, Histogram.order0(data));
+            assertArrayEquals(order1, Histogram.order1(data));
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data).flip();
+            assertArrayEquals(order0, Histogram.order0(direct, pool));
+            assertArrayEquals(order1, Histogram.order1(direct, pool));
+            assertEquals(0, direct.position());
+
+            Path file = Files.createTempFile("histogram", ".bin");
+            try {
+                Files.write(file, data);
+                assertArrayEquals(order0, Histogram.order0(file, pool));
+                assertArrayEquals(order1, Histogram.order1(file, pool));
+            } finally {
+                Files.delete(file);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPosition() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[] {5, 1, 2, 1, 2, 9});
+        data.position(1).limit(5);
+        long[] order0 = Histogram.order0(data, ForkJoinPool.commonPool());
+        assertEquals(2, order0[1]);
+        assertEquals(2, order0[2]);
+        assertEquals(0, order0[5]);
+        assertEquals(0, order0[9]);
+        //the first byte counted follows a 0, not the byte before the position
+        long[] order1 = Histogram.order1(data, ForkJoinPool.commonPool());
+        assertEquals(1, order1[1]);
+        assertEquals(2, order1[(1 << 8) | 2]);
+        assertEquals(1, order1[(2 << 8) | 1]);
+        assertEquals(0, order1[(5 << 8) | 1]);
+        assertArrayEquals(new long[256], Histogram.order0(new byte[0]));
+    }
+
+    @Test
+    public void testNormalize() {
+        Random rand = new Random(2);
+        for (int trial = 0; trial < 200; trial++) {
+            long[] counts = new long[256];
+            for (int i = 0; i < counts.length; i++) {
+                //mostly rare symbols, some dominant ones, some missing
+                int kind = rand.nextInt(4);
+                counts[i] = kind == 0 ? 0 : kind == 1 ? 1 + rand.nextInt(3) : kind == 2 ? rand.nextInt(1000) : (long) rand.nextInt(1 << 30) << 4;
+            }
+            int used = 0;
+            for (long c : counts) {
+                used += c > 0 ? 1 : 0;
+            }
+            for (int scale : new int[] {used, used + 1, 1 << 12, 16383, 1 << 16}) {
+                int[] freq = Histogram.normalize(counts, scale);
+                long sum = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    assertEquals(counts[i] > 0, freq[i] > 0);
+                    sum += freq[i];
+                }
+                assertEquals(scale, sum);
+            }
+        }
+        //exact proportions are kept
+        assertArrayEquals(new int[] {0, 100, 300, 600}, Histogram.normalize(new long[] {0, 1, 3, 6}, 1000));
+        assertArrayEquals(new int[4], Histogram.normalize(new long[4], 10));
+        try {
+            Histogram.normalize(new long[] {1, 1, 1}, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() {
+        byte[] data = ModelerPPMTest.jsonLog(500000, 3);
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            Map<Byte, Integer> stats = new HashMap<>();
+            for (byte b : data) {
+                stats.put(b, stats.getOrDefault(b, 0) + 1);
+            }
+            long boxed = System.nanoTime();
+            Histogram.order0(data);
+            long order0 = System.nanoTime();
+            Histogram.order1(data);
+            long order1 = System.nanoTime();
+            System.out.printf("%d bytes: HashMap %.1f ms, order-0 %.1f ms, order-1 %.1f ms%n", data.length,
+                    (boxed - start) / 1e6, (order0 - boxed) / 1e6, (order1 - order0) / 1e6);
+        }
+    }
+}
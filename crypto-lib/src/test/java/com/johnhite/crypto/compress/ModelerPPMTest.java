@@ -0,0 +1,152 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+import com.johnhite.crypto.compress.ArithmeticCoder.Symbol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ModelerPPMTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = jsonLog(2000, 1);
+        for (EntropyCoder coder : new EntropyCoder[] {new ArithmeticCoder(), new RangeCoder()}) {
+            for (int order = 0; order <= 6; order += 2) {
+                //a pool of 4096 nodes fills and resets several times
+                for (int maxNodes : new int[] {4096, ModelerPPM.DEFAULT_MAX_NODES}) {
+                    byte[] compressed = compress(data, coder, order, maxNodes);
+                    assertArrayEquals("order " + order + ", " + maxNodes + " nodes", data, decompress(compressed, coder, order, maxNodes));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        Random rand = new Random(4);
+        byte[] data = new byte[20000];
+        rand.nextBytes(data);
+        System.arraycopy(data, 0, data, 10000, 5000);
+        RangeCoder coder = new RangeCoder();
+        assertArrayEquals(data, decompress(compress(data, coder, 3, 1024), coder, 3, 1024));
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], coder, 3, 1024), coder, 3, 1024));
+    }
+
+    @Test
+    public void testModelerInterface() throws Exception {
+        //iterating on the encoder side, getScale and getEntryFromCount on the decoder side
+        byte[] data = jsonLog(200, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        ArithmeticCoder coder = new ArithmeticCoder();
+        coder.initializeEncoder();
+        ModelerPPM modeler = new ModelerPPM(new ByteArrayInputStream(data));
+        for (Symbol s : modeler) {
+            coder.encodeSymbol(s, out);
+        }
+        coder.flushEncoder(out);
+        out.flush();
+        assertEquals(data.length, modeler.getBytesProcessed());
+
+        BitIO in = new BitIO(new ByteArrayInputStream(bytes.toByteArray()));
+        coder = new ArithmeticCoder();
+        coder.initializeDecoder(in);
+        modeler = new ModelerPPM();
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        while (modeler.getBytesProcessed() < data.length) {
+            int count = coder.getCurrentCount(new Symbol(0, 0, modeler.getScale()));
+            Map.Entry<Byte, Symbol> entry = modeler.getEntryFromCount(count);
+            coder.removeSymbolFromStream(entry.getValue(), in);
+            if (entry.getKey() != null) {
+                decoded.write(entry.getKey());
+            }
+        }
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @Test
+    public void testBetterThanOrder0() throws Exception {
+        byte[] data = jsonLog(2000, 3);
+        RangeCoder coder = new RangeCoder();
+        int ppm = compress(data, coder, 4, ModelerPPM.DEFAULT_MAX_NODES).length;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        coder.initializeEncoder();
+        for (Symbol s : new AdaptiveModeler(new ByteArrayInputStream(data))) {
+            coder.encodeSymbol(s, out);
+        }
+        coder.flushEncoder(out);
+        out.flush();
+        assertTrue(ppm + " vs " + bytes.size(), ppm * 2 < bytes.size());
+    }
+
+    @Ignore
+    @Test
+    public void testRatio() throws Exception {
+        byte[] data = jsonLog(50000, 5);
+        RangeCoder coder = new RangeCoder();
+        for (int order = 0; order <= 6; order++) {
+            long start = System.nanoTime();
+            byte[] compressed = compress(data, coder, order, ModelerPPM.DEFAULT_MAX_NODES);
+            long encoded = System.nanoTime();
+            decompress(compressed, coder, order, ModelerPPM.DEFAULT_MAX_NODES);
+            long decoded = System.nanoTime();
+            System.out.printf("order %d: %d -> %d bytes (%.2f bpc), encode %.0f ms, decode %.0f ms%n", order, data.length, compressed.length,
+                    8.0 * compressed.length / data.length, (encoded - start) / 1e6, (decoded - encoded) / 1e6);
+        }
+    }
+
+    static byte[] jsonLog(int lines, long seed) {
+        Random rand = new Random(seed);
+        String[] levels = {"INFO", "INFO", "INFO", "WARN", "DEBUG", "ERROR"};
+        String[] services = {"auth", "billing", "search", "gateway"};
+        StringBuilder sb = new StringBuilder();
+        long time = 1600000000000L;
+        for (int i = 0; i < lines; i++) {
+            time += rand.nextInt(5000);
+            sb.append("{\"ts\":").append(time)
+                    .append(",\"level\":\"").append(levels[rand.nextInt(levels.length)])
+                    .append("\",\"service\":\"").append(services[rand.nextInt(services.length)])
+                    .append("\",\"user\":").append(rand.nextInt(1000))
+                    .append(",\"latencyMs\":").append(rand.nextInt(300))
+                    .append(",\"msg\":\"request ").append(rand.nextBoolean() ? "completed" : "failed")
+                    .append("\"}\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] data, EntropyCoder coder, int order, int maxNodes) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        coder.initializeEncoder();
+        ModelerPPM model = new ModelerPPM(order, maxNodes);
+        for (byte b : data) {
+            model.encode(b & 0xFF, coder, out);
+        }
+        model.encode(ModelerPPM.END, coder, out);
+        coder.flushEncoder(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, EntropyCoder coder, int order, int maxNodes) throws Exception {
+        BitIO in = new BitIO(new ByteArrayInputStream(compressed));
+        coder.initializeDecoder(in);
+        ModelerPPM model = new ModelerPPM(order, maxNodes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b = model.decode(coder, in); b != ModelerPPM.END; b = model.decode(coder, in)) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+import com.johnhite.crypto.compress.ArithmeticCoder.Symbol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ModelerTest {
+
+    @Test
+    public void testModeler8B() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(300, 1);
+        Path file = Files.createTempFile("modeler", ".txt");
+        try {
+            Files.write(file, data);
+            Modeler8B modeler = new Modeler8B(file.toString());
+            checkTable(modeler, modeler::getSymbolFromCount, modeler::getSymbol);
+
+            byte[] compressed = encode(modeler);
+            BitIO in = new BitIO(new ByteArrayInputStream(compressed));
+            ArithmeticCoder coder = new ArithmeticCoder();
+            coder.initializeDecoder(in);
+            Symbol scale = modeler.getEntryFromCount(0).getValue();
+            byte[] decoded = new byte[modeler.getBytesProcessed()];
+            for (int i = 0; i < decoded.length; i++) {
+                int symbol = modeler.getSymbolFromCount(coder.getCurrentCount(scale));
+                coder.removeSymbolFromStream(modeler.getSymbol(symbol), in);
+                decoded[i] = (byte) symbol;
+            }
+            assertArrayEquals(data, decoded);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testModeler4B() throws Exception {
+        byte[] data = ModelerPPMTest.jsonLog(300, 2);
+        Path file = Files.createTempFile("modeler", ".txt");
+        try {
+            Files.write(file, data);
+            Modeler4B modeler = new Modeler4B(file.toString());
+            checkTable(modeler, modeler::getSymbolFromCount, modeler::getSymbol);
+
+            byte[] compressed = encode(modeler);
+            BitIO in = new BitIO(new ByteArrayInputStream(compressed));
+            ArithmeticCoder coder = new ArithmeticCoder();
+            coder.initializeDecoder(in);
+            Symbol scale = modeler.getEntryFromCount(0).getValue();
+            byte[] decoded = new byte[modeler.getBytesProcessed()];
+            for (int i = 0; i < decoded.length; i++) {
+                int low = modeler.getSymbolFromCount(coder.getCurrentCount(scale));
+                coder.removeSymbolFromStream(modeler.getSymbol(low), in);
+                int high = modeler.getSymbolFromCount(coder.getCurrentCount(scale));
+                coder.removeSymbolFromStream(modeler.getSymbol(high), in);
+                decoded[i] = (byte) ((high << 4) | low);
+            }
+            assertArrayEquals(data, decoded);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    interface SymbolFromCount {
+        int get(int count);
+    }
+
+    interface SymbolLookup {
+        Symbol get(int symbol);
+    }
+
+    //every count maps to the symbol whose range holds it, the same one getEntryFromCount returns
+    private static void checkTable(Modeler modeler, SymbolFromCount fromCount, SymbolLookup lookup) {
+        int scale = modeler.getEntryFromCount(0).getValue().scale;
+        for (int count = 0; ; count++) {
+            int symbol;
+            try {
+                symbol = fromCount.get(count);
+            } catch (RuntimeException e) {
+                //only counts past the last symbol are not covered
+                assertTrue(count > 0 && count <= scale);
+                break;
+            }
+            Symbol s = lookup.get(symbol);
+            assertTrue(count >= s.lowCount && count < s.highCount);
+            Map.Entry<Byte, Symbol> entry = modeler.getEntryFromCount(count);
+            assertEquals(symbol, entry.getKey() & 0xFF);
+            assertSame(s, entry.getValue());
+            //no allocation per call
+            assertSame(entry, modeler.getEntryFromCount(count));
+        }
+    }
+
+    private static byte[] encode(Modeler modeler) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        ArithmeticCoder coder = new ArithmeticCoder();
+        coder.initializeEncoder();
+        for (Symbol s : modeler) {
+            coder.encodeSymbol(s, out);
+        }
+        coder.flushEncoder(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,154 @@
+package com.johnhite.crypto.compress;
+
+import static org.junit.Assert.*;
+
+import com.johnhite.crypto.compress.ArithmeticCoder.BitIO;
+import com.johnhite.crypto.compress.ArithmeticCoder.Symbol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class RangeCoderTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random rand = new Random(3);
+        for (int n : new int[] {0, 1, 2, 3, 100, 100000}) {
+            //a 16 bit style model, and one using the full 24 bit scale with very rare symbols
+            roundTrip(skewedModel(rand, 14), n, rand);
+            roundTrip(skewedModel(rand, 24), n, rand);
+        }
+    }
+
+    @Test
+    public void testCarry() throws Exception {
+        //the top 1/2^24 of the range, taken 3 times in 4, leaves long runs of 0xFF bytes pending;
+        //the other symbols then carry into them
+        Random rand = new Random(5);
+        int scale = RangeCoder.MAX_SCALE;
+        int third = scale / 3;
+        int[] cumulative = {0, third, 2 * third, scale - 1, scale};
+        int[] symbols = new int[50000];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = rand.nextInt(4) == 0 ? rand.nextInt(3) : 3;
+        }
+        assertArrayEquals(symbols, decode(encode(cumulative, symbols), cumulative, symbols.length));
+    }
+
+    @Test
+    public void testCompressesBetterThanArithmeticCoder() throws Exception {
+        //1 in 20000 symbols is rare, below the resolution of the 16 bit coder
+        int[] cumulative = {0, 1, 20000};
+        int[] symbols = new int[200000];
+        for (int i = 0; i < symbols.length; i += 20000) {
+            symbols[i] = 0;
+            for (int j = 1; j < 20000; j++) {
+                symbols[i + j] = 1;
+            }
+        }
+        byte[] compressed = encode(cumulative, symbols);
+        assertArrayEquals(symbols, decode(compressed, cumulative, symbols.length));
+        //about 15 bits per rare symbol, and 20000 * log2(20000/19999) bits for the rest
+        assertTrue(compressed.length < 30);
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() throws Exception {
+        Random rand = new Random(1);
+        int[] cumulative = skewedModel(rand, 14);
+        int scale = cumulative[cumulative.length - 1];
+        int[] symbols = randomSymbols(cumulative, 1 << 20, rand);
+        Symbol[] model = new Symbol[cumulative.length - 1];
+        for (int i = 0; i < model.length; i++) {
+            model[i] = new Symbol(cumulative[i], cumulative[i + 1], scale);
+        }
+        for (EntropyCoder coder : new EntropyCoder[] {new ArithmeticCoder(), new RangeCoder()}) {
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                BitIO out = new BitIO(bytes);
+                coder.initializeEncoder();
+                for (int s : symbols) {
+                    coder.encodeSymbol(model[s], out);
+                }
+                coder.flushEncoder(out);
+                out.flush();
+                long encoded = System.nanoTime();
+                BitIO in = new BitIO(new ByteArrayInputStream(bytes.toByteArray()));
+                coder.initializeDecoder(in);
+                for (int j = 0; j < symbols.length; j++) {
+                    int count = coder.getCurrentCount(model[0]);
+                    int s = 0;
+                    while (cumulative[s + 1] <= count) {
+                        s++;
+                    }
+                    coder.removeSymbolFromStream(model[s], in);
+                }
+                long decoded = System.nanoTime();
+                System.out.printf("%s: %d bytes, encode %.1f ms, decode %.1f ms%n", coder.getClass().getSimpleName(), bytes.size(), (encoded - start) / 1e6, (decoded - encoded) / 1e6);
+            }
+        }
+    }
+
+    private static void roundTrip(int[] cumulative, int n, Random rand) throws Exception {
+        int[] symbols = randomSymbols(cumulative, n, rand);
+        byte[] compressed = encode(cumulative, symbols);
+        assertArrayEquals("n = " + n, symbols, decode(compressed, cumulative, n));
+    }
+
+    //8 frequent symbols and 248 rare ones, the total being 2^bits
+    private static int[] skewedModel(Random rand, int bits) {
+        int[] cumulative = new int[257];
+        for (int i = 0; i < 256; i++) {
+            cumulative[i + 1] = cumulative[i] + 1 + (i < 8 ? 1 << (bits - 4) : rand.nextInt(4));
+        }
+        cumulative[256] = 1 << bits;
+        return cumulative;
+    }
+
+    private static int[] randomSymbols(int[] cumulative, int n, Random rand) {
+        int[] symbols = new int[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = rand.nextInt(10) < 8 ? rand.nextInt(8) : rand.nextInt(cumulative.length - 1);
+        }
+        return symbols;
+    }
+
+    private static byte[] encode(int[] cumulative, int[] symbols) throws Exception {
+        int scale = cumulative[cumulative.length - 1];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitIO out = new BitIO(bytes);
+        RangeCoder coder = new RangeCoder();
+        coder.initializeEncoder();
+        for (int s : symbols) {
+            coder.encodeSymbol(new Symbol(cumulative[s], cumulative[s + 1], scale), out);
+        }
+        coder.flushEncoder(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static int[] decode(byte[] compressed, int[] cumulative, int n) throws Exception {
+        int scale = cumulative[cumulative.length - 1];
+        BitIO in = new BitIO(new ByteArrayInputStream(compressed));
+        RangeCoder coder = new RangeCoder();
+        coder.initializeDecoder(in);
+        Symbol symScale = new Symbol(0, 0, scale);
+        int[] symbols = new int[n];
+        for (int i = 0; i < n; i++) {
+            int count = coder.getCurrentCount(symScale);
+            int s = 0;
+            while (cumulative[s + 1] <= count) {
+                s++;
+            }
+            symbols[i] = s;
+            coder.removeSymbolFromStream(new Symbol(cumulative[s], cumulative[s + 1], scale), in);
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,93 @@
+package com.johnhite.crypto.salsa20;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ChaChaFilesTest {
+
+    @Test
+    public void testMatchesOutputStream() throws Exception {
+        Random rand = new Random(31);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        //several segments with a partial last one
+        byte[] message = new byte[3 * ChaChaFiles.SEGMENT_SIZE + 1234];
+        rand.nextBytes(message);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (OutputStream out = new ChaChaOutputStream(expected, key, nonce)) {
+            out.write(message);
+        }
+
+        Path plain = Files.createTempFile("chacha", ".plain");
+        Path encrypted = Files.createTempFile("chacha", ".enc");
+        Path decrypted = Files.createTempFile("chacha", ".dec");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.write(plain, message);
+            ChaChaFiles.encrypt(plain, encrypted, key, nonce, pool);
+            assertArrayEquals(expected.toByteArray(), Files.readAllBytes(encrypted));
+            ChaChaFiles.decrypt(encrypted, decrypted, key, nonce, pool);
+            assertArrayEquals(message, Files.readAllBytes(decrypted));
+
+            //a longer existing output is truncated, an empty input gives an empty output
+            Files.write(plain, new byte[0]);
+            ChaChaFiles.encrypt(plain, encrypted, key, nonce);
+            assertEquals(0, Files.size(encrypted));
+        } finally {
+            pool.shutdown();
+            Files.delete(plain);
+            Files.delete(encrypted);
+            Files.delete(decrypted);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSameFile() throws Exception {
+        Path file = Files.createTempFile("chacha", ".bin");
+        try {
+            ChaChaFiles.encrypt(file, file, new byte[32], new byte[8]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testScaling() throws Exception {
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        Path plain = Files.createTempFile("chacha", ".plain");
+        Path encrypted = Files.createTempFile("chacha", ".enc");
+        try {
+            Files.write(plain, new byte[512 * 1024 * 1024]);
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                ChaChaFiles.encrypt(plain, encrypted, key, nonce, pool); //warm up
+                long start = System.nanoTime();
+                ChaChaFiles.encrypt(plain, encrypted, key, nonce, pool);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                pool.shutdown();
+                System.out.printf("threads=%d: %.0f MB/s%n", threads, Files.size(plain) / seconds / 1e6);
+                if (threads == cores) {
+                    break;
+                }
+            }
+        } finally {
+            Files.delete(plain);
+            Files.delete(encrypted);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.johnhite.crypto.salsa20;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ChaChaPolyTest {
+    private static final byte[] KEY = new byte[32];
+
+    static {
+        new Random(41).nextBytes(KEY);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random rand = new Random(43);
+        //empty, partial, exactly one segment, several segments with and without a partial tail
+        for (int size : new int[]{0, 1, 999, 1000, 1001, 5000, 5123}) {
+            byte[] message = new byte[size];
+            rand.nextBytes(message);
+            byte[] sealed = encrypt(message, 1000);
+            assertEquals(ChaChaPoly.HEADER_SIZE + size + Math.max(1, (size + 999) / 1000) * ChaChaPoly.TAG_SIZE, sealed.length);
+            assertArrayEquals(message, decrypt(sealed));
+        }
+
+        //the default segment size with mixed single byte and bulk calls
+        byte[] message = new byte[300000];
+        rand.nextBytes(message);
+        ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+        try (OutputStream out = new ChaChaPolyOutputStream(sealed, KEY)) {
+            int off = 0;
+            while (off < message.length) {
+                if (rand.nextInt(3) == 0) {
+                    out.write(message[off++]);
+                } else {
+                    int n = Math.min(rand.nextInt(100000), message.length - off);
+                    out.write(message, off, n);
+                    off += n;
+                }
+            }
+        }
+        try (InputStream in = new ChaChaPolyInputStream(new ByteArrayInputStream(sealed.toByteArray()), KEY)) {
+            byte[] actual = new byte[message.length];
+            actual[0] = (byte) in.read();
+            int off = 1;
+            int n;
+            while ((n = in.read(actual, off, Math.min(7777, actual.length - off))) > 0) {
+                off += n;
+            }
+            assertEquals(message.length, off);
+            assertEquals(-1, in.read());
+            assertArrayEquals(message, actual);
+        }
+    }
+
+    @Test
+    public void testFreshKeyPerStream() throws Exception {
+        byte[] message = new byte[100];
+        byte[] a = encrypt(message, 1000);
+        byte[] b = encrypt(message, 1000);
+        assertFalse(Arrays.equals(Arrays.copyOfRange(a, ChaChaPoly.HEADER_SIZE, a.length), Arrays.copyOfRange(b, ChaChaPoly.HEADER_SIZE, b.length)));
+    }
+
+    @Test
+    public void testTampering() throws Exception {
+        Random rand = new Random(47);
+        byte[] message = new byte[3500];
+        rand.nextBytes(message);
+        byte[] sealed = encrypt(message, 1000);
+        int segment = 1000 + ChaChaPoly.TAG_SIZE;
+
+        //every flipped bit is detected, in the header, the data or a tag
+        for (int i = 0; i < sealed.length; i += 7) {
+            byte[] modified = sealed.clone();
+            modified[i] ^= 1 << (i % 8);
+            assertFails(modified);
+        }
+        //dropping or swapping segments
+        byte[] dropped = new byte[sealed.length - segment];
+        System.arraycopy(sealed, 0, dropped, 0, ChaChaPoly.HEADER_SIZE + segment);
+        System.arraycopy(sealed, ChaChaPoly.HEADER_SIZE + 2 * segment, dropped, ChaChaPoly.HEADER_SIZE + segment, sealed.length - ChaChaPoly.HEADER_SIZE - 2 * segment);
+        assertFails(dropped);
+        byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, ChaChaPoly.HEADER_SIZE, swapped, ChaChaPoly.HEADER_SIZE + segment, segment);
+        System.arraycopy(sealed, ChaChaPoly.HEADER_SIZE + segment, swapped, ChaChaPoly.HEADER_SIZE, segment);
+        assertFails(swapped);
+        //truncating at a segment boundary or inside a tag
+        assertFails(Arrays.copyOf(sealed, ChaChaPoly.HEADER_SIZE + 2 * segment));
+        assertFails(Arrays.copyOf(sealed, sealed.length - 1));
+        assertFails(Arrays.copyOf(sealed, ChaChaPoly.HEADER_SIZE + 5));
+        //the wrong key
+        byte[] otherKey = KEY.clone();
+        otherKey[0] ^= 1;
+        try {
+            new ChaChaPolyInputStream(new ByteArrayInputStream(sealed), otherKey).read();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof AEADBadTagException);
+        }
+    }
+
+    @Test
+    public void testDataReleasedPerSegment() throws Exception {
+        byte[] message = new byte[3000];
+        new Random(53).nextBytes(message);
+        byte[] sealed = encrypt(message, 1000);
+        //corrupt the last segment, the first two are still returned before the failure
+        sealed[sealed.length - 1] ^= 1;
+        InputStream in = new ChaChaPolyInputStream(new ByteArrayInputStream(sealed), KEY);
+        byte[] first = new byte[2000];
+        int off = 0;
+        while (off < first.length) {
+            off += in.read(first, off, first.length - off);
+        }
+        assertArrayEquals(Arrays.copyOf(message, 2000), first);
+        try {
+            in.read();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof AEADBadTagException);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() throws Exception {
+        byte[] data = new byte[64 * 1024 * 1024];
+        for (int rep = 0; rep < 5; rep++) {
+            long start = System.nanoTime();
+            byte[] sealed = encrypt(data, ChaChaPoly.DEFAULT_SEGMENT_SIZE);
+            long mid = System.nanoTime();
+            try (InputStream in = new ChaChaPolyInputStream(new ByteArrayInputStream(sealed), KEY)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            long end = System.nanoTime();
+            System.out.printf("seal: %.0f MB/s open: %.0f MB/s%n", data.length / ((mid - start) / 1e9) / 1e6, data.length / ((end - mid) / 1e9) / 1e6);
+        }
+    }
+
+    private static byte[] encrypt(byte[] message, int segmentSize) throws IOException {
+        ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+        try (OutputStream out = new ChaChaPolyOutputStream(sealed, KEY, segmentSize)) {
+            out.write(message);
+        }
+        return sealed.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] sealed) throws IOException {
+        try (InputStream in = new ChaChaPolyInputStream(new ByteArrayInputStream(sealed), KEY)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void assertFails(byte[] sealed) {
+        try {
+            decrypt(sealed);
+            fail("Modified stream was accepted");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+}
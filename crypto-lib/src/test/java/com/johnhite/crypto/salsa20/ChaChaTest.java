@@ -0,0 +1,371 @@
+package com.johnhite.crypto.salsa20;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ChaChaTest {
+
+    @Test
+    public void testChaCha20Vectors() {
+        //https://tools.ietf.org/html/draft-agl-tls-chacha20poly1305-04#section-7
+        ChaCha c = new ChaCha(new byte[32], new byte[8]);
+        assertEquals("76b8e0ada0f13d90405d6ae55386bd28bdd219b8a08ded1aa836efcc8b770dc7da41597c5157488d7724e03fb8d84a376a43b8f41518a11cc387b669b2ee6586",
+                Hex.encodeHexString(c.next()));
+        assertEquals("9f07e7be5551387a98ba977c732d080dcb0f29a048e3656912c6533e32ee7aed29b721769ce64e43d57133b074d839d531ed1f28510afb45ace10a1f4b794d6f",
+                Hex.encodeHexString(c.next()));
+
+        byte[] key = new byte[32];
+        key[31] = 1;
+        c = new ChaCha(key, new byte[8]);
+        assertTrue(Hex.encodeHexString(c.next()).startsWith("4540f05a9f1fb296d7736e7b208e3c96eb4fe1834688d2604f450952ed432d41bbe2a0b6ea7566d2a5d1e7e20d42af2c53d792b1c43fea817e9ad275"));
+
+        byte[] nonce = new byte[8];
+        nonce[7] = 1;
+        c = new ChaCha(new byte[32], nonce);
+        assertTrue(Hex.encodeHexString(c.next()).startsWith("de9cba7bf3d69ef5e786dc63973f653a0b49e015adbff7134fcb7df137821031e85a050278a7084527214f73efc7fa5b5277062eb7a0433e445f41e3"));
+    }
+
+    @Test
+    public void testKeystreamMatchesNext() {
+        Random rand = new Random(7);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+
+        ChaCha single = new ChaCha(key, nonce);
+        byte[] expected = new byte[300 * 64];
+        for (int i = 0; i < 300; i++) {
+            System.arraycopy(single.next(), 0, expected, i * 64, 64);
+        }
+
+        ChaCha multi = new ChaCha(key, nonce);
+        byte[] actual = new byte[expected.length + 3];
+        int blocks = 0;
+        for (int n = 1; blocks < 300; n++) {
+            int count = Math.min(n, 300 - blocks);
+            multi.keystream(actual, 3 + blocks * 64, count);
+            blocks += count;
+        }
+        assertArrayEquals(expected, Arrays.copyOfRange(actual, 3, actual.length));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testKeystreamOverflow() {
+        new ChaCha(new byte[32], new byte[8]).keystream(new byte[100], 0, 2);
+    }
+
+    @Test
+    public void testKeystreamBlockCountOverflow() {
+        //blocks * 64 wraps around to 64, which would fit
+        byte[] out = new byte[100];
+        try {
+            new ChaCha(new byte[32], new byte[8]).keystream(out, 0, (1 << 26) + 1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            assertArrayEquals(new byte[100], out);
+        }
+    }
+
+    @Test
+    public void testXorInPieces() {
+        Random rand = new Random(11);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] message = new byte[5000];
+        rand.nextBytes(message);
+
+        byte[] expected = new byte[message.length];
+        byte[] ks = new byte[(message.length + 63) / 64 * 64];
+        new ChaCha(key, nonce).keystream(ks, 0, ks.length / 64);
+        for (int i = 0; i < message.length; i++) {
+            expected[i] = (byte) (message[i] ^ ks[i]);
+        }
+
+        ChaCha c = new ChaCha(key, nonce);
+        byte[] actual = message.clone();
+        int off = 0;
+        while (off < actual.length) {
+            int n = Math.min(rand.nextInt(700), actual.length - off);
+            c.xor(actual, off, actual, off, n);
+            off += n;
+        }
+        assertArrayEquals(expected, actual);
+
+        //skipping keystream must land on the same bytes as processing them
+        for (int skip : new int[]{0, 1, 63, 64, 65, 511, 512, 513, 1000, 4095}) {
+            c = new ChaCha(key, nonce);
+            c.xor(new byte[7], 0, new byte[7], 0, 7);
+            c.skip(skip);
+            byte[] rest = Arrays.copyOfRange(message, 7 + skip, message.length);
+            c.xor(rest, 0, rest, 0, rest.length);
+            assertArrayEquals(Arrays.copyOfRange(expected, 7 + skip, expected.length), rest);
+        }
+    }
+
+    @Test
+    public void testSeek() {
+        Random rand = new Random(23);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] ks = new byte[10000];
+        new ChaCha(key, nonce).xor(ks, 0, ks, 0, ks.length);
+
+        ChaCha c = new ChaCha(key, nonce);
+        for (int i = 0; i < 200; i++) {
+            int offset = rand.nextInt(ks.length - 600);
+            int len = rand.nextInt(600);
+            c.seek(offset);
+            assertEquals(offset, c.position());
+            byte[] actual = new byte[len];
+            c.xor(actual, 0, actual, 0, len);
+            assertEquals(offset + len, c.position());
+            assertArrayEquals(Arrays.copyOfRange(ks, offset, offset + len), actual);
+
+            byte[] positional = new byte[len + 3];
+            c.xorAt(offset, positional, 3, positional, 3, len);
+            assertArrayEquals(actual, Arrays.copyOfRange(positional, 3, len + 3));
+            //xorAt leaves the stream position alone
+            assertEquals(offset + len, c.position());
+        }
+
+        //the block counter is a full 64 bit value
+        c.seek(Long.MAX_VALUE - 100);
+        assertEquals(Long.MAX_VALUE - 100, c.position());
+        byte[] tail = new byte[100];
+        c.xor(tail, 0, tail, 0, tail.length);
+        byte[] expected = new byte[100];
+        c.xorAt(Long.MAX_VALUE - 100, expected, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, tail);
+    }
+
+    @Test
+    public void testXorAtParallel() {
+        Random rand = new Random(29);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] message = new byte[1 << 20];
+        rand.nextBytes(message);
+        byte[] expected = message.clone();
+        new ChaCha(key, nonce).xor(expected, 0, expected, 0, expected.length);
+
+        ChaCha shared = new ChaCha(key, nonce);
+        byte[] actual = message.clone();
+        int segment = 10000;
+        IntStream.range(0, (message.length + segment - 1) / segment).parallel().forEach(i -> {
+            int start = i * segment;
+            shared.xorAt(start, actual, start, actual, start, Math.min(segment, actual.length - start));
+        });
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        Random rand = new Random(13);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] message = new byte[100000];
+        rand.nextBytes(message);
+
+        //mix single byte and bulk writes
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = new ChaChaOutputStream(encrypted, key, nonce)) {
+            int off = 0;
+            while (off < message.length) {
+                if (rand.nextInt(4) == 0) {
+                    out.write(message[off++]);
+                } else {
+                    int n = Math.min(rand.nextInt(40000), message.length - off);
+                    out.write(message, off, n);
+                    off += n;
+                }
+            }
+        }
+        byte[] ciphertext = encrypted.toByteArray();
+        byte[] expected = message.clone();
+        new ChaCha(key, nonce).xor(expected, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, ciphertext);
+
+        try (InputStream in = new ChaChaInputStream(new ByteArrayInputStream(ciphertext), key, nonce)) {
+            assertEquals(message[0] & 0xFF, in.read());
+            byte[] chunk = new byte[1000];
+            assertEquals(1000, in.read(chunk, 0, 1000));
+            assertArrayEquals(Arrays.copyOfRange(message, 1, 1001), chunk);
+            assertEquals(ciphertext.length - 1001, in.available());
+            assertEquals(777, in.skip(777));
+            ByteArrayOutputStream rest = new ByteArrayOutputStream();
+            assertEquals(message.length - 1778, in.transferTo(rest));
+            assertArrayEquals(Arrays.copyOfRange(message, 1778, message.length), rest.toByteArray());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testProcessBuffers() {
+        Random rand = new Random(17);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] message = new byte[3000];
+        rand.nextBytes(message);
+        byte[] expected = message.clone();
+        new ChaCha(key, nonce).xor(expected, 0, expected, 0, expected.length);
+
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer src = direct ? ByteBuffer.allocateDirect(message.length) : ByteBuffer.allocate(message.length);
+            src.put(message).flip();
+            ByteBuffer dst = ByteBuffer.allocateDirect(message.length + 5);
+            dst.position(5);
+            ChaCha c = new ChaCha(key, nonce);
+            src.limit(1001);
+            c.process(src, dst);
+            src.limit(message.length);
+            c.process(src, dst);
+            assertEquals(message.length, src.position());
+            assertEquals(message.length + 5, dst.position());
+            byte[] actual = new byte[message.length];
+            dst.position(5);
+            dst.get(actual);
+            assertArrayEquals(expected, actual);
+
+            //in place, read only sources
+            ByteBuffer inPlace = direct ? ByteBuffer.allocateDirect(message.length) : ByteBuffer.allocate(message.length);
+            inPlace.put(message).flip();
+            new ChaCha(key, nonce).process(inPlace, inPlace);
+            assertEquals(message.length, inPlace.position());
+            inPlace.flip();
+            ByteBuffer readOnly = inPlace.asReadOnlyBuffer();
+            ByteBuffer decrypted = ByteBuffer.allocate(message.length);
+            new ChaCha(key, nonce).process(readOnly, decrypted);
+            assertArrayEquals(message, decrypted.array());
+        }
+    }
+
+    @Test
+    public void testChannels() throws Exception {
+        Random rand = new Random(19);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] message = new byte[200000];
+        rand.nextBytes(message);
+        byte[] expected = message.clone();
+        new ChaCha(key, nonce).xor(expected, 0, expected, 0, expected.length);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (WritableByteChannel out = new ChaChaWritableByteChannel(Channels.newChannel(encrypted), key, nonce)) {
+            ByteBuffer src = ByteBuffer.wrap(message);
+            src.limit(100);
+            assertEquals(100, out.write(src));
+            src.limit(message.length);
+            assertEquals(message.length - 100, out.write(src));
+        }
+        assertArrayEquals(expected, encrypted.toByteArray());
+
+        try (ReadableByteChannel in = new ChaChaReadableByteChannel(Channels.newChannel(new ByteArrayInputStream(expected)), key, nonce)) {
+            ByteBuffer dst = ByteBuffer.allocateDirect(message.length);
+            while (in.read(dst) >= 0 && dst.hasRemaining()) {
+            }
+            dst.flip();
+            byte[] actual = new byte[message.length];
+            dst.get(actual);
+            assertArrayEquals(message, actual);
+        }
+
+        Path file = Files.createTempFile("chacha", ".bin");
+        try (SeekableByteChannel channel = new ChaChaSeekableByteChannel(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE), key, nonce)) {
+            assertEquals(message.length, channel.write(ByteBuffer.wrap(message)));
+            assertArrayEquals(expected, Files.readAllBytes(file));
+
+            for (int i = 0; i < 20; i++) {
+                int start = rand.nextInt(message.length);
+                int len = Math.min(rand.nextInt(5000), message.length - start);
+                ByteBuffer range = ByteBuffer.allocate(len);
+                channel.position(start);
+                while (range.hasRemaining() && channel.read(range) >= 0) {
+                }
+                assertArrayEquals(Arrays.copyOfRange(message, start, start + len), range.array());
+            }
+
+            //rewrite a range in the middle of the file
+            byte[] patch = new byte[777];
+            rand.nextBytes(patch);
+            channel.position(12345);
+            channel.write(ByteBuffer.wrap(patch));
+            System.arraycopy(patch, 0, message, 12345, patch.length);
+            ByteBuffer all = ByteBuffer.allocate(message.length);
+            channel.position(0);
+            while (all.hasRemaining() && channel.read(all) >= 0) {
+            }
+            assertArrayEquals(message, all.array());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testStreamPerformance() throws Exception {
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[8];
+        byte[] data = new byte[64 * 1024 * 1024];
+        for (int rep = 0; rep < 5; rep++) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream sink = new ByteArrayOutputStream(data.length);
+            try (OutputStream out = new ChaChaOutputStream(sink, key, nonce)) {
+                out.write(data);
+            }
+            long mid = System.nanoTime();
+            try (InputStream in = new ChaChaInputStream(new ByteArrayInputStream(sink.toByteArray()), key, nonce)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            long end = System.nanoTime();
+            System.out.printf("write: %.0f MB/s read: %.0f MB/s%n", data.length / ((mid - start) / 1e9) / 1e6, data.length / ((end - mid) / 1e9) / 1e6);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testKeystreamPerformance() {
+        ChaCha c = new ChaCha(new byte[32], new byte[8]);
+        byte[] buffer = new byte[64 * 1024];
+        for (int rep = 0; rep < 10; rep++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                c.keystream(buffer, 0, buffer.length / 64);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("keystream: %.0f MB/s%n", 1000.0 * buffer.length / seconds / 1e6);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.johnhite.crypto.salsa20;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+
+public class Poly1305Test {
+
+    @Test
+    public void testRFC8439Vector() throws Exception {
+        //https://tools.ietf.org/html/rfc8439#section-2.5.2
+        Poly1305 poly = new Poly1305(Hex.decodeHex("85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b".toCharArray()));
+        byte[] message = "Cryptographic Forum Research Group".getBytes();
+        poly.update(message, 0, message.length);
+        assertEquals("a8061dc1305136c6c22b8baf0c0127a9", Hex.encodeHexString(poly.doFinal()));
+    }
+
+    @Test
+    public void testMatchesReference() {
+        Random rand = new Random(37);
+        for (int t = 0; t < 2000; t++) {
+            byte[] key = new byte[32];
+            rand.nextBytes(key);
+            //extreme r, s and messages exercise the carries
+            if (t % 3 == 0) {
+                Arrays.fill(key, 0, 16, (byte) 0xff);
+            }
+            if (t % 5 == 0) {
+                Arrays.fill(key, 16, 32, (byte) 0xff);
+            }
+            byte[] message = new byte[rand.nextInt(200)];
+            rand.nextBytes(message);
+            if (t % 2 == 0) {
+                Arrays.fill(message, (byte) 0xff);
+            }
+
+            Poly1305 poly = new Poly1305(key);
+            int off = 0;
+            while (off < message.length) {
+                int n = Math.min(rand.nextInt(40), message.length - off);
+                poly.update(message, off, n);
+                off += n;
+            }
+            assertArrayEquals(reference(key, message), poly.doFinal());
+        }
+    }
+
+    /**
+     * Poly1305 straight from the definition, with BigInteger arithmetic.
+     */
+    private static byte[] reference(byte[] key, byte[] message) {
+        BigInteger p = BigInteger.ONE.shiftLeft(130).subtract(BigInteger.valueOf(5));
+        BigInteger r = littleEndian(key, 0, 16).and(new BigInteger("0ffffffc0ffffffc0ffffffc0fffffff", 16));
+        BigInteger s = littleEndian(key, 16, 16);
+        BigInteger h = BigInteger.ZERO;
+        for (int i = 0; i < message.length; i += 16) {
+            int n = Math.min(16, message.length - i);
+            h = h.add(littleEndian(message, i, n).setBit(8 * n)).multiply(r).mod(p);
+        }
+        h = h.add(s);
+        byte[] tag = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            tag[i] = h.shiftRight(8 * i).byteValue();
+        }
+        return tag;
+    }
+
+    private static BigInteger littleEndian(byte[] b, int off, int len) {
+        byte[] bigEndian = new byte[len + 1];
+        for (int i = 0; i < len; i++) {
+            bigEndian[len - i] = b[off + i];
+        }
+        return new BigInteger(bigEndian);
+    }
+}
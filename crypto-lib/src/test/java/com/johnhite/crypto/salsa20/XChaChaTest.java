@@ -0,0 +1,81 @@
+package com.johnhite.crypto.salsa20;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+
+public class XChaChaTest {
+
+    @Test
+    public void testHChaCha20Vector() throws Exception {
+        //https://tools.ietf.org/html/draft-irtf-cfrg-xchacha-03#section-2.2.1
+        byte[] key = Hex.decodeHex("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f".toCharArray());
+        byte[] nonce = Hex.decodeHex("000000090000004a0000000031415927".toCharArray());
+        assertEquals("82413b4227b27bfed30e42508a877d73a0f9e4d58a74a853c12ec41326d3ecdc", Hex.encodeHexString(XChaCha.hchacha20(key, nonce)));
+    }
+
+    @Test
+    public void testXChaCha() {
+        Random rand = new Random(59);
+        byte[] key = new byte[32];
+        rand.nextBytes(key);
+        byte[] nonce = new byte[24];
+        rand.nextBytes(nonce);
+
+        byte[] subkey = XChaCha.hchacha20(key, nonce);
+        byte[] expected = new ChaCha(subkey, Arrays.copyOfRange(nonce, 16, 24)).next();
+        assertArrayEquals(expected, new ChaCha(key, nonce).next());
+        assertArrayEquals(expected, new XChaCha(key).cipher(nonce).next());
+    }
+
+    @Test
+    public void testSubkeyCache() {
+        Random rand = new Random(61);
+        byte[] key = new byte[32];
+        rand.nextBytes(key);
+        XChaCha xchacha = new XChaCha(key, 4);
+        //a few prefixes with counters in the last 8 bytes, more prefixes than the cache holds
+        for (int i = 0; i < 100; i++) {
+            byte[] nonce = new byte[24];
+            nonce[0] = (byte) (i % 6);
+            nonce[16] = (byte) i;
+            assertArrayEquals(new ChaCha(key, nonce).next(), xchacha.cipher(nonce).next());
+        }
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        Random rand = new Random(67);
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[24];
+        rand.nextBytes(key);
+        rand.nextBytes(nonce);
+        byte[] message = new byte[10000];
+        rand.nextBytes(message);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = new ChaChaOutputStream(encrypted, new XChaCha(key).cipher(nonce))) {
+            out.write(message);
+        }
+        byte[] expected = message.clone();
+        new ChaCha(key, nonce).xor(expected, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, encrypted.toByteArray());
+
+        try (InputStream in = new ChaChaInputStream(new ByteArrayInputStream(encrypted.toByteArray()), key, nonce)) {
+            assertArrayEquals(message, in.readAllBytes());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonceLength() {
+        new ChaCha(new byte[32], new byte[12]);
+    }
+}
@@ -0,0 +1,116 @@
+package com.johnhite.crypto.schnorr;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class X25519Test {
+
+    @Test
+    public void testVectors() throws Exception {
+        //https://tools.ietf.org/html/rfc7748#section-5.2
+        assertEquals("c3da55379de9c6908e94ea4df28d084f32eccf03491c71f754b4075577a28552", Hex.encodeHexString(X25519.scalarMult(
+                hex("a546e36bf0527c9d3b16154b82465edd62144c0ac1fc5a18506a2244ba449ac4"),
+                hex("e6db6867583030db3594c1a424b15f7c726624ec26b3353b10a903a6d0ab1c4c"))));
+
+        byte[] k = new byte[32];
+        k[0] = 9;
+        byte[] u = k.clone();
+        for (int i = 1; i <= 1000; i++) {
+            byte[] next = X25519.scalarMult(k, u);
+            u = k;
+            k = next;
+            if (i == 1) {
+                assertEquals("422c8e7a6227d7bca1350b3e2bb7279f7897b87bb6854b783c60e80311ae3079", Hex.encodeHexString(k));
+            }
+        }
+        assertEquals("684cf59ba83309552800ef566f2f4d3c1c3887c49360e3875f2eb94d99532c51", Hex.encodeHexString(k));
+    }
+
+    @Test
+    public void testDiffieHellman() throws Exception {
+        //https://tools.ietf.org/html/rfc7748#section-6.1
+        byte[] alice = hex("77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+        byte[] bob = hex("5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+        byte[] alicePublic = X25519.publicKey(alice);
+        byte[] bobPublic = X25519.publicKey(bob);
+        assertEquals("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a", Hex.encodeHexString(alicePublic));
+        assertEquals("de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f", Hex.encodeHexString(bobPublic));
+        String shared = "4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742";
+        assertEquals(shared, Hex.encodeHexString(X25519.scalarMult(alice, bobPublic)));
+        assertEquals(shared, Hex.encodeHexString(X25519.scalarMult(bob, alicePublic)));
+    }
+
+    @Test
+    public void testCurvePoints() {
+        //small multiples against repeated affine addition
+        CurvePt sum = Curve25519.G;
+        for (int k = 1; k <= 20; k++) {
+            assertEquals("k = " + k, sum, Curve25519.G.mul(BigInteger.valueOf(k)));
+            sum = k == 1 ? Curve25519.G.dbl() : sum.add(Curve25519.G);
+        }
+        assertEquals(Curve25519.INF, Curve25519.G.mul(BigInteger.ZERO));
+        assertEquals(Curve25519.INF, Curve25519.G.mul(Curve25519.N));
+        CurvePt minusG = Curve25519.G.mul(Curve25519.N.subtract(BigInteger.ONE));
+        assertEquals(Curve25519.G.getX(), minusG.getX());
+        assertEquals(Curve25519.P.subtract(Curve25519.G.getY()), minusG.getY());
+
+        MontgomeryCurve curve = new MontgomeryCurve(new Curve25519Parameters());
+        Random rand = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            BigInteger a = new BigInteger(255, rand);
+            BigInteger b = new BigInteger(255, rand);
+            CurvePt aG = Curve25519.G.mul(a);
+            //(a + b)G = aG + bG, the sum taken with the affine formulas
+            assertEquals(Curve25519.G.mul(a.add(b)), aG.add(Curve25519.G.mul(b)));
+            //the same point through MontgomeryCurve and through X25519 on the u coordinate alone
+            CurvePt p = curve.getG().mul(a);
+            assertEquals(aG.getX(), p.getX());
+            assertEquals(aG.getY(), p.getY());
+            byte[] k = toLittleEndian(a);
+            if ((k[0] & 7) == 0 && (k[31] & 0xC0) == 0x40) {
+                assertArrayEquals(toLittleEndian(aG.getX()), X25519.publicKey(k));
+            }
+        }
+        //a clamped scalar
+        BigInteger c = BigInteger.ONE.shiftLeft(254).add(new BigInteger(250, rand).shiftLeft(3));
+        assertArrayEquals(toLittleEndian(Curve25519.G.mul(c).getX()), X25519.publicKey(toLittleEndian(c)));
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() {
+        BigInteger k = new BigInteger(255, new Random(2)).mod(Curve25519.N);
+        byte[] scalar = toLittleEndian(k);
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                Curve25519.G.mul(k);
+            }
+            long mul = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                X25519.publicKey(scalar);
+            }
+            long ladder = System.nanoTime();
+            System.out.printf("G.mul %.1f us, X25519 %.1f us%n", (mul - start) / 1e6, (ladder - mul) / 1e6);
+        }
+    }
+
+    private static byte[] hex(String s) throws Exception {
+        return Hex.decodeHex(s.toCharArray());
+    }
+
+    private static byte[] toLittleEndian(BigInteger x) {
+        byte[] be = x.toByteArray();
+        byte[] le = new byte[32];
+        for (int i = 0; i < be.length && i < 32; i++) {
+            le[i] = be[be.length - 1 - i];
+        }
+        return le;
+    }
+}
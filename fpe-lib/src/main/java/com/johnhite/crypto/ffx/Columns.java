@@ -0,0 +1,73 @@
+package com.johnhite.crypto.ffx;
+
+/**
+ * Helpers for the batch encrypt/decrypt methods.
+ *
+ * Batches are held in columnar form: the symbols of every record are concatenated into a single
+ * char[] and record i is buffer[offsets[i]..offsets[i + 1]). Consecutive records of the same
+ * length form a run that can be encrypted with the same precomputed state.
+ */
+final class Columns {
+
+    private Columns() {}
+
+    /**
+     * Returns the offsets of the records in values when packed into a single buffer. The array has
+     * values.length + 1 entries, the last being the total number of symbols.
+     */
+    static int[] offsets(CharSequence[] values) {
+        final int[] offsets = new int[values.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            offsets[i + 1] = Math.addExact(offsets[i], values[i].length());
+        }
+        return offsets;
+    }
+
+    static char[] pack(CharSequence[] values, int[] offsets) {
+        final char[] buffer = new char[offsets[values.length]];
+        for (int i = 0; i < values.length; i++) {
+            final CharSequence value = values[i];
+            final int off = offsets[i];
+            if (value instanceof String) {
+                ((String) value).getChars(0, value.length(), buffer, off);
+            } else {
+                for (int j = 0; j < value.length(); j++) {
+                    buffer[off + j] = value.charAt(j);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Copies each record of buffer into out. Entries of out that are null or of the wrong length
+     * are replaced with new arrays.
+     */
+    static void unpack(char[] buffer, int[] offsets, char[][] out) {
+        for (int i = 0; i < out.length; i++) {
+            final int length = offsets[i + 1] - offsets[i];
+            if (out[i] == null || out[i].length != length) {
+                out[i] = new char[length];
+            }
+            System.arraycopy(buffer, offsets[i], out[i], 0, length);
+        }
+    }
+
+    /**
+     * Returns the end of the run of records starting at start that have the same length.
+     */
+    static int runEnd(int[] offsets, int start) {
+        final int length = offsets[start + 1] - offsets[start];
+        int end = start + 1;
+        while (end < offsets.length - 1 && offsets[end + 1] - offsets[end] == length) {
+            end++;
+        }
+        return end;
+    }
+
+    static void checkSizes(CharSequence[] in, char[][] out) {
+        if (in.length != out.length) {
+            throw new IllegalArgumentException("Output array must have the same number of entries as the input. Expected " + in.length + " but was " + out.length);
+        }
+    }
+}
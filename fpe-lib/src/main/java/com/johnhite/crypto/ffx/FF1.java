@@ -4,12 +4,13 @@ import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Specified in NIST-SP 800-38Gr1
@@ -20,17 +21,21 @@ import java.util.Arrays;
  * https://csrc.nist.gov/CSRC/media/Projects/Block-Cipher-Techniques/documents/BCM/proposed-modes/ffx/ffx-spec2.pdf
  *
  */
-public class FF1 {
-    private static final int METHOD_ALTERNATING_FEISTEL = 2;
-    private static final int ADDITION_BLOCKWISE = 1;
-    private static final int VERSION = 1;
+public class FF1 implements FFXCipher {
     private static final IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+    //distinct message lengths whose contexts are kept
+    private static final int MAX_CONTEXTS = 64;
     private SecretKey key;
     private RadixEncoding base;
     private byte[] tweak;
     private Cipher aesCipher;
-    private long minLength;
-    private long maxLength;
+    //contexts by message length, least recently used first
+    private final Map<Integer, FF1Context> contexts = new LinkedHashMap<Integer, FF1Context>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, FF1Context> eldest) {
+            return size() > MAX_CONTEXTS;
+        }
+    };
 
     public void init(SecretKey key, FFXAlgorithmParameterSpec params) throws InvalidKeyException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException {
         if (!key.getAlgorithm().equalsIgnoreCase("AES")) {
@@ -43,145 +48,104 @@ public class FF1 {
         this.base =  params.getBase();
         this.tweak = params.getTweak() == null ? new byte[0] : params.getTweak();
         this.aesCipher = Cipher.getInstance("AES/CBC/NoPadding");
-        this.minLength = minLen(this.base);
-        this.maxLength = maxLen(this.base);
+        this.contexts.clear();
     }
 
     public String encrypt(String value) throws IllegalBlockSizeException, BadPaddingException {
         final char[] X = value.toCharArray();
-        if (X.length < minLength || X.length > maxLength) {
-            throw new IllegalBlockSizeException("Invalid message length. AES-FF1 for radix " + base.getRadix() + " supports message lengths " + minLength + " - " + maxLength);
-        }
-        if (!base.isValidEncoding(X)) {
-            throw new IllegalArgumentException("Input is not a valid radix " + base.getRadix() + " encoding");
-        }
-
-        final int u = X.length/2;
-        final int v = X.length - u;
-        final int b = MoreMath.ceiling(MoreMath.ceiling((double)v * MoreMath.log(2, (double)base.getRadix()))/8.0);
-        final int d = 4 * MoreMath.ceiling(b/4.0) + 4;
-
-        final BigInteger radixBigInt = BigInteger.valueOf(base.getRadix());
-        final BigInteger powRadixU = radixBigInt.pow(u);
-        final BigInteger powRadixV = radixBigInt.pow(v);
-
-        char[] A = Arrays.copyOfRange(X, 0, u);
-        char[] B = Arrays.copyOfRange(X, u, X.length);
-
-        //P is a fixed header for the PRF for each round
-        final ByteBuffer P = ByteBuffer.allocate(16)
-                .put(new byte[] {VERSION, METHOD_ALTERNATING_FEISTEL, ADDITION_BLOCKWISE})
-                .put(intToBytes((int)base.getRadix()), 1, 3)
-                .put((byte)10)
-                .put((byte)(u%256)) //split(n)
-                .putInt(X.length) //n
-                .putInt(tweak.length); //t
-
-        //This pads the length of the string to a multiple of 16
-        final int numZeros = (16 - ((b + tweak.length + 1) % 16)) % 16;
-        final byte[] Q0 = ByteBuffer.allocate(tweak.length + numZeros).put(tweak).array();
-
-        for (int i=0; i < 10; i++) {
-            final byte[] Q1 = getBytes(base.toBase10(B).toByteArray(), 0, b);
-            //Q = T || [0]^numZeros || [i]^1 || [NUMradix(B)]^b
-            final ByteBuffer Q = ByteBuffer.allocate(Q0.length + Q1.length +1)
-                .put(Q0).put((byte)i).put(Q1);
-
-            // R = PRF( P || Q )
-            final byte[] R = prf(concat(P, Q).array());
-
-            // S = first d bytes of R || CIPH(R xor [1]^16) || CIPH(R xor [2]^16) || ... || CIPH(R xor [d/16-1]^16)
-            final ByteBuffer S = ByteBuffer.allocate(d).put(R, 0, Math.min(d, R.length));
-            final byte[] pad = new byte[R.length];
-            for (int j = R.length; j < d; j += 16) {
-                Arrays.fill(pad, (byte) (j - R.length + 1));
-                final byte[] mac = cipher(xor(pad, R));
-                S.put(mac, 0, Math.min((d-j), mac.length));
-            }
-
-            final BigInteger y = new BigInteger(1, S.array());
-
-            final int m = i % 2 == 0 ? u : v;
-            final BigInteger radixPowM = i % 2 == 0 ? powRadixU : powRadixV;
-            final BigInteger c = base.toBase10(A).add(y).mod(radixPowM);
-            final char[] C = getChars(base.fromBase10(c), 0, m, base.getChar(0));
-
-            A = B;
-            B = C;
-        }
-        //640 5. Return A || B.
-        StringBuilder sb = new StringBuilder();
-        sb.append(A);
-        sb.append(B);
-        return sb.toString();
+        return new String(context(X.length).encrypt(X));
     }
 
     public String decrypt(String value) throws IllegalBlockSizeException, BadPaddingException {
         final char[] X = value.toCharArray();
-        if (X.length < minLength || X.length > maxLength) {
-            throw new IllegalBlockSizeException("Invalid message length. AES-FF1 for radix " + base.getRadix() + " supports message lengths " + minLength + " - " + maxLength);
-        }
-        if (!base.isValidEncoding(X)) {
-            throw new IllegalArgumentException("Input is not a valid radix " + base.getRadix() + " encoding");
-        }
-        final int u = X.length/2;
-        final int v = X.length - u;
-        final int b = MoreMath.ceiling(MoreMath.ceiling((double)v * MoreMath.log(2, (double)base.getRadix()))/8.0);
-        final int d = 4 * MoreMath.ceiling(b/4.0) + 4;
-
-        final BigInteger radixBigInt = BigInteger.valueOf(base.getRadix());
-        final BigInteger powRadixU = radixBigInt.pow(u);
-        final BigInteger powRadixV = radixBigInt.pow(v);
-
-        char[] A = Arrays.copyOfRange(X, 0, u);
-        char[] B = Arrays.copyOfRange(X, u, X.length);
-
-        //P is a fixed header for the PRF for each round
-        final ByteBuffer P = ByteBuffer.allocate(16);
-        P.put(new byte[] {VERSION, METHOD_ALTERNATING_FEISTEL, ADDITION_BLOCKWISE});
-        P.put(intToBytes((int)base.getRadix()), 1, 3); //3 bytes of the radix
-        P.put((byte)10);
-        P.put((byte)(u%256));
-        P.putInt(X.length);
-        P.putInt(tweak.length);
-
-        //This pads the length of the string to a multiple of 16
-        final int numZeros = (16 - ((b + tweak.length + 1) % 16)) % 16;
+        return new String(context(X.length).decrypt(X));
+    }
 
-        byte[] Q0 = ByteBuffer.allocate(tweak.length + numZeros).put(tweak).array();
-        for (int i=9; i >= 0; i--) {
-            byte[] Q1 = getBytes(base.toBase10(A).toByteArray(), 0, b);
-            ByteBuffer Q = ByteBuffer.allocate(Q0.length + Q1.length +1);
-            Q.put(Q0);
-            Q.put((byte)i);
-            Q.put(Q1);
+    /**
+     * Encrypts every value of in into the matching entry of out. Entries of out that are null or
+     * of the wrong length are replaced with new arrays.
+     *
+     * @param in the values to encrypt
+     * @param out receives the encrypted values, must have the same number of entries as in
+     * @throws IllegalBlockSizeException if any value has a length unsupported by the radix
+     */
+    public void encryptAll(CharSequence[] in, char[][] out) throws IllegalBlockSizeException {
+        Columns.checkSizes(in, out);
+        final int[] offsets = Columns.offsets(in);
+        final char[] buffer = Columns.pack(in, offsets);
+        encryptAll(buffer, offsets, buffer);
+        Columns.unpack(buffer, offsets, out);
+    }
 
-            byte[] R = prf(concat(P, Q).array());
+    /**
+     * Decrypts every value of in into the matching entry of out. Entries of out that are null or
+     * of the wrong length are replaced with new arrays.
+     *
+     * @param in the values to decrypt
+     * @param out receives the decrypted values, must have the same number of entries as in
+     * @throws IllegalBlockSizeException if any value has a length unsupported by the radix
+     */
+    public void decryptAll(CharSequence[] in, char[][] out) throws IllegalBlockSizeException {
+        Columns.checkSizes(in, out);
+        final int[] offsets = Columns.offsets(in);
+        final char[] buffer = Columns.pack(in, offsets);
+        decryptAll(buffer, offsets, buffer);
+        Columns.unpack(buffer, offsets, out);
+    }
 
-            // S = first d bytes of R || CIPH(R xor [1]^16) || CIPH(R xor [2]^16) || ... || CIPH(R xor [d/16-1]^16)
-            ByteBuffer S = ByteBuffer.allocate(d);
-            S.put(R, 0, Math.min(d, R.length));
-            byte[] pad = new byte[R.length];
-            for (int j = R.length; j < d; j += 16) {
-                Arrays.fill(pad, (byte) (j - R.length + 1));
-                byte[] mac = cipher(xor(pad, R));
-                S.put(mac, 0, Math.min((d-j), mac.length));
-            }
+    /**
+     * Encrypts a column of values. Record i is in[offsets[i]..offsets[i + 1]) and is written to
+     * the same range of out. in and out may be the same array.
+     *
+     * Consecutive records of the same length share one precomputed context and have their round
+     * functions computed together, so sorting or grouping a batch by length is worthwhile.
+     *
+     * @param in the concatenated values
+     * @param offsets the start of each record followed by the end of the last record
+     * @param out receives the encrypted values
+     * @throws IllegalBlockSizeException if any record has a length unsupported by the radix
+     */
+    public void encryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException {
+        for (int start = 0; start < offsets.length - 1;) {
+            final int end = Columns.runEnd(offsets, start);
+            context(offsets[start + 1] - offsets[start]).engine().encryptAll(in, offsets, start, end, out);
+            start = end;
+        }
+    }
 
-            BigInteger y = new BigInteger(1, S.array());
+    /**
+     * Decrypts a column of values. Record i is in[offsets[i]..offsets[i + 1]) and is written to
+     * the same range of out. in and out may be the same array.
+     *
+     * @param in the concatenated values
+     * @param offsets the start of each record followed by the end of the last record
+     * @param out receives the decrypted values
+     * @throws IllegalBlockSizeException if any record has a length unsupported by the radix
+     */
+    public void decryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException {
+        for (int start = 0; start < offsets.length - 1;) {
+            final int end = Columns.runEnd(offsets, start);
+            context(offsets[start + 1] - offsets[start]).engine().decryptAll(in, offsets, start, end, out);
+            start = end;
+        }
+    }
 
-            int m = i % 2 == 0 ? u : v;
-            final BigInteger radixPowM = i % 2 == 0 ? powRadixU : powRadixV;
-            BigInteger c = base.toBase10(B).subtract(y).mod(radixPowM);
-            char[] C = getChars(base.fromBase10(c), 0, m, base.getChar(0));
-            B = A;
-            A = C;
+    /**
+     * Returns the precomputed context for messages of the given length using the key and
+     * parameters this instance was initialized with. The returned context is immutable and
+     * may be cached and shared between threads.
+     *
+     * @param length the message length in symbols
+     * @return the FF1 context for length
+     * @throws IllegalBlockSizeException if length is outside the range supported by the radix
+     */
+    public FF1Context context(int length) throws IllegalBlockSizeException {
+        FF1Context context = contexts.get(length);
+        if (context == null) {
+            context = new FF1Context(key, base, tweak, length);
+            contexts.put(length, context);
         }
-        //640 5. Return A || B.
-        StringBuilder sb = new StringBuilder();
-        sb.append(A);
-        sb.append(B);
-        return sb.toString();
+        return context;
     }
 
     public byte[] cipher(byte[] data) throws BadPaddingException, IllegalBlockSizeException {
@@ -205,19 +169,6 @@ public class FF1 {
         return (long)(Math.pow(2.0, 32.0) - 1.0);
     }
 
-    /**
-     * Blockwise XOR of byte arrays a and b storing the result in a;
-     * @param a
-     * @param b
-     * @return
-     */
-    private static byte[] xor(byte[] a, byte[] b) {
-        for (int i=0; i < a.length; i++) {
-            a[i] ^= b[i];
-        }
-        return a;
-    }
-
     /**
      * Returns an array of the specified length. If source is less than length,
      * the array will be have leading zeros to pad the length to the appropriate size.
@@ -237,26 +188,6 @@ public class FF1 {
         return ret;
     }
 
-    private static char[] getChars(char[] source, int start, int length, char pad) {
-        char[] ret = new char[length];
-        Arrays.fill(ret, pad);
-        int n = start + length > source.length ? source.length -1 : start + length -1;
-        int ind = ret.length -1;
-        for (int i= n; i >= start; i--) {
-            ret[ind]= source[i];
-            ind--;
-        }
-        return ret;
-    }
-
-    private static byte[] intToBytes(int value) {
-        return ByteBuffer.allocate(4).putInt(value).array();
-    }
-
-    private static ByteBuffer concat(ByteBuffer a, ByteBuffer b) {
-        return ByteBuffer.allocate(a.capacity() + b.capacity()).put(a.array()).put(b.array());
-    }
-
     public static void main(String... args) throws Exception {
 
         System.out.println(Arrays.toString(getBytes(new byte[]{10,47,5,10}, 0, 3)));
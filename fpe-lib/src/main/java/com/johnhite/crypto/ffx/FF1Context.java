@@ -0,0 +1,201 @@
+package com.johnhite.crypto.ffx;
+
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Precomputed FF1 state for a fixed (key, radix, length, tweak).
+ *
+ * Everything in FF1 that does not depend on the message value is computed once here: the
+ * split u/v, the byte lengths b and d and the CBC-MAC state after P and every block of Q that
+ * only contains the tweak. Each round then only has to MAC the final block(s) of Q holding the
+ * round number and NUMradix(B).
+ *
+ * Instances are immutable and may be shared between threads. The rounds themselves run on a
+ * per thread {@link FF1Engine}.
+ */
+public final class FF1Context {
+    private static final int METHOD_ALTERNATING_FEISTEL = 2;
+    private static final int ADDITION_BLOCKWISE = 1;
+    private static final int VERSION = 1;
+    static final int ROUNDS = 10;
+    //engines of the contexts each thread used most recently, most recent first. The cache is
+    //shared by all contexts and bounded, so a discarded context and its engine are dropped once
+    //a thread has moved on to ENGINE_CACHE other contexts
+    private static final int ENGINE_CACHE = 16;
+    private static final ThreadLocal<FF1Engine[]> ENGINES = ThreadLocal.withInitial(() -> new FF1Engine[ENGINE_CACHE]);
+
+    final SecretKey key;
+    final RadixEncoding base;
+    final int radix;
+    final int n;
+    final int u;
+    final int v;
+    final int b;
+    final int d;
+    //radix^u and radix^v when both halves fit in a long, otherwise 0
+    final long powRadixU;
+    final long powRadixV;
+    //radix^u and radix^v when the halves are long enough to use BigInteger rounds, otherwise null
+    final BigInteger bigRadixU;
+    final BigInteger bigRadixV;
+    //largest k such that radix^k fits in 31 bits, used to convert numbers k digits at a time
+    final int chunkDigits;
+    final long chunkDivisor;
+    //CBC-MAC state after P and the constant leading blocks of Q
+    final byte[] prefixState;
+    //remaining bytes of Q. [i] is written at roundOffset and NUMradix(B) fills the last b bytes
+    final byte[] qTail;
+    final int roundOffset;
+
+    FF1Context(SecretKey key, RadixEncoding base, byte[] tweak, int length) throws IllegalBlockSizeException {
+        final long minLength = FF1.minLen(base);
+        final long maxLength = FF1.maxLen(base);
+        if (length < minLength || length > maxLength) {
+            throw new IllegalBlockSizeException("Invalid message length. AES-FF1 for radix " + base.getRadix() + " supports message lengths " + minLength + " - " + maxLength);
+        }
+        this.key = key;
+        this.base = base;
+        this.radix = (int) base.getRadix();
+        this.n = length;
+        this.u = length / 2;
+        this.v = length - u;
+
+        //b = ceil(ceil(v * log2(radix)) / 8) computed exactly: ceil(log2(radix^v)) is the bit length of radix^v - 1
+        this.b = (BigInteger.valueOf(radix).pow(v).subtract(BigInteger.ONE).bitLength() + 7) / 8;
+        this.d = 4 * ((b + 3) / 4) + 4;
+
+        final long powV = MoreMath.pow(radix, v);
+        this.powRadixU = powV > 0 ? MoreMath.pow(radix, u) : 0;
+        this.powRadixV = powV > 0 ? powV : 0;
+
+        this.bigRadixU = v > FF1Engine.BIG_DIGITS ? BigInteger.valueOf(radix).pow(u) : null;
+        this.bigRadixV = v > FF1Engine.BIG_DIGITS ? BigInteger.valueOf(radix).pow(v) : null;
+
+        int k = 1;
+        long divisor = radix;
+        while (divisor * radix <= (1L << 31)) {
+            divisor *= radix;
+            k++;
+        }
+        this.chunkDigits = k;
+        this.chunkDivisor = divisor;
+
+        //Q = T || [0]^numZeros || [i]^1 || [NUMradix(B)]^b
+        final int numZeros = (16 - ((b + tweak.length + 1) % 16)) % 16;
+        final byte[] Q0 = Arrays.copyOf(tweak, tweak.length + numZeros);
+        final int constantBlocks = Q0.length / 16;
+        this.roundOffset = Q0.length % 16;
+        this.qTail = Arrays.copyOf(Arrays.copyOfRange(Q0, constantBlocks * 16, Q0.length), roundOffset + 1 + b);
+
+        //P is a fixed header for the PRF for each round
+        final byte[] P = ByteBuffer.allocate(16)
+                .put(new byte[] {VERSION, METHOD_ALTERNATING_FEISTEL, ADDITION_BLOCKWISE})
+                .put((byte) (radix >>> 16))
+                .put((byte) (radix >>> 8))
+                .put((byte) radix)
+                .put((byte) ROUNDS)
+                .put((byte) (u % 256)) //split(n)
+                .putInt(n) //n
+                .putInt(tweak.length) //t
+                .array();
+        final Cipher aes = newBlockCipher(key);
+        this.prefixState = new byte[16];
+        try {
+            aes.update(P, 0, 16, prefixState, 0);
+            final byte[] block = new byte[16];
+            for (int i = 0; i < constantBlocks; i++) {
+                for (int j = 0; j < 16; j++) {
+                    block[j] = (byte) (prefixState[j] ^ Q0[i * 16 + j]);
+                }
+                aes.update(block, 0, 16, prefixState, 0);
+            }
+        } catch (ShortBufferException e) {
+            //This should not be possible
+            throw new SecurityException("Error initializing AES Cipher.", e);
+        }
+    }
+
+    public int getLength() {
+        return n;
+    }
+
+    public RadixEncoding getBase() {
+        return base;
+    }
+
+    /**
+     * Creates a new engine for this context. Engines hold their own AES cipher and scratch
+     * buffers and are not thread safe, but encrypt without producing garbage.
+     *
+     * @return a new FF1 engine
+     */
+    public FF1Engine newEngine() {
+        return new FF1Engine(this, newBlockCipher(key));
+    }
+
+    /**
+     * Returns an engine for this context owned by the calling thread.
+     */
+    FF1Engine engine() {
+        final FF1Engine[] cache = ENGINES.get();
+        int i = 0;
+        while (i < cache.length - 1 && cache[i] != null && cache[i].getContext() != this) {
+            i++;
+        }
+        FF1Engine engine = cache[i];
+        if (engine == null || engine.getContext() != this) {
+            //the least recently used engine, in the last slot, is the one dropped
+            engine = newEngine();
+        }
+        System.arraycopy(cache, 0, cache, 1, i);
+        cache[0] = engine;
+        return engine;
+    }
+
+    public String encrypt(String value) throws IllegalBlockSizeException {
+        return new String(encrypt(value.toCharArray()));
+    }
+
+    public String decrypt(String value) throws IllegalBlockSizeException {
+        return new String(decrypt(value.toCharArray()));
+    }
+
+    public char[] encrypt(char[] X) throws IllegalBlockSizeException {
+        checkLength(X);
+        return engine().encrypt(X);
+    }
+
+    public char[] decrypt(char[] X) throws IllegalBlockSizeException {
+        checkLength(X);
+        return engine().decrypt(X);
+    }
+
+    private void checkLength(char[] X) throws IllegalBlockSizeException {
+        if (X.length != n) {
+            throw new IllegalBlockSizeException("Invalid message length. This AES-FF1 context only supports messages of length " + n);
+        }
+    }
+
+    /**
+     * Returns a raw AES block function for the key. The CBC-MAC is computed by chaining single
+     * block ECB calls so the cipher never needs to be re-initialized.
+     */
+    private static Cipher newBlockCipher(SecretKey key) {
+        try {
+            final Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+            ecb.init(Cipher.ENCRYPT_MODE, key);
+            return ecb;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
+            throw new SecurityException("Error initializing AES Cipher.", e);
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package com.johnhite.crypto.ffx;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Allocation free FF1 rounds for a {@link FF1Context}.
+ *
+ * The message is kept as arrays of radix digits for the whole encryption. The PRF is a CBC-MAC
+ * computed by chaining a raw AES block function over preallocated buffers, NUMradix(B) is
+ * converted to bytes with multi-word arithmetic over int limbs and y mod radix^m is produced
+ * digit by digit by short division of S, so no BigInteger is involved. When radix^v fits in a
+ * long the halves are kept as longs instead and y mod radix^m is a single 128 bit remainder.
+ * Very long halves, where the quadratic digit arithmetic would dominate, are kept as
+ * BigIntegers and converted with the subquadratic conversions of {@link RadixEncoding}.
+ *
+ * Engines are not thread safe. Use one engine per thread, or {@link FF1Context} which
+ * manages that automatically.
+ */
+public final class FF1Engine {
+    private static final long MASK = 0xFFFFFFFFL;
+    //number of records whose CBC-MAC blocks are encrypted together by the batch methods
+    static final int LANES = 16;
+    //halves longer than this are converted with the subquadratic conversions of RadixEncoding
+    static final int BIG_DIGITS = 256;
+
+    private final FF1Context ctx;
+    private final Cipher aes;
+    private final int[] left;
+    private final int[] right;
+    private final byte[] q;
+    private final byte[] x = new byte[16];
+    private final byte[] r = new byte[16];
+    private final byte[] s;
+    //NUM(S) as big endian 32 bit limbs
+    private final int[] y;
+    //NUMradix(B) as little endian 32 bit limbs
+    private final int[] num;
+    //per record halves and cipher blocks for the batch methods
+    private final long[] laneA = new long[LANES];
+    private final long[] laneB = new long[LANES];
+    private final long[] laneY = new long[LANES];
+    private final byte[] laneX = new byte[LANES * 16];
+    private final byte[] laneR = new byte[LANES * 16];
+
+    FF1Engine(FF1Context ctx, Cipher aes) {
+        this.ctx = ctx;
+        this.aes = aes;
+        this.left = new int[ctx.v];
+        this.right = new int[ctx.v];
+        this.q = ctx.qTail.clone();
+        this.s = new byte[(ctx.d + 15) / 16 * 16];
+        this.y = new int[ctx.d / 4];
+        this.num = new int[(ctx.b + 3) / 4];
+    }
+
+    public FF1Context getContext() {
+        return ctx;
+    }
+
+    public char[] encrypt(char[] X) {
+        final char[] out = new char[ctx.n];
+        encrypt(X, 0, out, 0);
+        return out;
+    }
+
+    public char[] decrypt(char[] X) {
+        final char[] out = new char[ctx.n];
+        decrypt(X, 0, out, 0);
+        return out;
+    }
+
+    /**
+     * Encrypts the context length symbols of in starting at inOff into out starting at outOff.
+     * in and out may be the same array.
+     */
+    public void encrypt(char[] in, int inOff, char[] out, int outOff) {
+        load(in, inOff);
+        if (ctx.powRadixV > 0) {
+            encryptLong();
+            store(left, ctx.u, right, ctx.v, out, outOff);
+            return;
+        }
+        if (ctx.v > BIG_DIGITS) {
+            encryptBig();
+            store(left, ctx.u, right, ctx.v, out, outOff);
+            return;
+        }
+        int[] A = left;
+        int[] B = right;
+        int lenA = ctx.u;
+        int lenB = ctx.v;
+        for (int i = 0; i < FF1Context.ROUNDS; i++) {
+            prf(i, B, lenB);
+            // C = (NUMradix(A) + y) mod radix^m, computed in place over A
+            addY(A, lenA);
+            final int[] t = A;
+            A = B;
+            B = t;
+            final int tl = lenA;
+            lenA = lenB;
+            lenB = tl;
+        }
+        store(A, lenA, B, lenB, out, outOff);
+    }
+
+    /**
+     * Decrypts the context length symbols of in starting at inOff into out starting at outOff.
+     * in and out may be the same array.
+     */
+    public void decrypt(char[] in, int inOff, char[] out, int outOff) {
+        load(in, inOff);
+        if (ctx.powRadixV > 0) {
+            decryptLong();
+            store(left, ctx.u, right, ctx.v, out, outOff);
+            return;
+        }
+        if (ctx.v > BIG_DIGITS) {
+            decryptBig();
+            store(left, ctx.u, right, ctx.v, out, outOff);
+            return;
+        }
+        int[] A = left;
+        int[] B = right;
+        int lenA = ctx.u;
+        int lenB = ctx.v;
+        for (int i = FF1Context.ROUNDS - 1; i >= 0; i--) {
+            prf(i, A, lenA);
+            // C = (NUMradix(B) - y) mod radix^m, computed in place over B
+            subtractY(B, lenB);
+            final int[] t = A;
+            A = B;
+            B = t;
+            final int tl = lenA;
+            lenA = lenB;
+            lenB = tl;
+        }
+        store(A, lenA, B, lenB, out, outOff);
+    }
+
+    /**
+     * Encrypts the records starting at offsets[from] through offsets[to - 1] in in, each of the
+     * context length, into the same offsets in out. in and out may be the same array.
+     *
+     * When the halves fit in a long the rounds of up to {@link #LANES} records are computed
+     * together so each AES call encrypts one block for every record instead of a single block.
+     */
+    public void encryptAll(char[] in, int[] offsets, int from, int to, char[] out) {
+        cryptAll(in, offsets, from, to, out, true);
+    }
+
+    /**
+     * Decrypts the records starting at offsets[from] through offsets[to - 1] in in, each of the
+     * context length, into the same offsets in out. in and out may be the same array.
+     */
+    public void decryptAll(char[] in, int[] offsets, int from, int to, char[] out) {
+        cryptAll(in, offsets, from, to, out, false);
+    }
+
+    private void cryptAll(char[] in, int[] offsets, int from, int to, char[] out, boolean encrypt) {
+        Objects.checkFromToIndex(from, to, offsets.length);
+        if (ctx.powRadixV == 0) {
+            for (int j = from; j < to; j++) {
+                if (encrypt) {
+                    encrypt(in, offsets[j], out, offsets[j]);
+                } else {
+                    decrypt(in, offsets[j], out, offsets[j]);
+                }
+            }
+            return;
+        }
+        for (int start = from; start < to; start += LANES) {
+            final int lanes = Math.min(LANES, to - start);
+            for (int k = 0; k < lanes; k++) {
+                load(in, offsets[start + k]);
+                laneA[k] = toLong(left, ctx.u);
+                laneB[k] = toLong(right, ctx.v);
+            }
+            if (encrypt) {
+                encryptLanes(lanes);
+            } else {
+                decryptLanes(lanes);
+            }
+            for (int k = 0; k < lanes; k++) {
+                fromLong(laneA[k], left, ctx.u);
+                fromLong(laneB[k], right, ctx.v);
+                store(left, ctx.u, right, ctx.v, out, offsets[start + k]);
+            }
+        }
+    }
+
+    private void encryptLanes(int lanes) {
+        for (int i = 0; i < FF1Context.ROUNDS; i++) {
+            final long radixPowM = i % 2 == 0 ? ctx.powRadixU : ctx.powRadixV;
+            prfLanes(i, laneB, lanes, radixPowM);
+            for (int k = 0; k < lanes; k++) {
+                long C = laneA[k] + laneY[k];
+                if (Long.compareUnsigned(C, radixPowM) >= 0) {
+                    C -= radixPowM;
+                }
+                laneA[k] = laneB[k];
+                laneB[k] = C;
+            }
+        }
+    }
+
+    private void decryptLanes(int lanes) {
+        for (int i = FF1Context.ROUNDS - 1; i >= 0; i--) {
+            final long radixPowM = i % 2 == 0 ? ctx.powRadixU : ctx.powRadixV;
+            prfLanes(i, laneA, lanes, radixPowM);
+            for (int k = 0; k < lanes; k++) {
+                long C = laneB[k] - laneY[k];
+                if (C < 0) {
+                    C += radixPowM;
+                }
+                laneB[k] = laneA[k];
+                laneA[k] = C;
+            }
+        }
+    }
+
+    /**
+     * Computes y mod radix^m for round i of every lane into laneY. The CBC-MAC of each lane
+     * advances one block per AES call, so every call encrypts lanes independent blocks.
+     */
+    private void prfLanes(int i, long[] nums, int lanes, long radixPowM) {
+        q[ctx.roundOffset] = (byte) i;
+        for (int k = 0; k < lanes; k++) {
+            System.arraycopy(ctx.prefixState, 0, laneR, k << 4, 16);
+        }
+        try {
+            for (int off = 0; off < q.length; off += 16) {
+                //NUMradix(B) is always in the last block of Q
+                final boolean last = off + 16 == q.length;
+                for (int k = 0; k < lanes; k++) {
+                    if (last) {
+                        writeLong(nums[k]);
+                    }
+                    final int o = k << 4;
+                    for (int t = 0; t < 16; t++) {
+                        laneX[o + t] = (byte) (laneR[o + t] ^ q[off + t]);
+                    }
+                }
+                aes.update(laneX, 0, lanes << 4, laneR, 0);
+            }
+        } catch (ShortBufferException e) {
+            //This should not be possible
+            throw new SecurityException("Error computing AES-FF1 round function.", e);
+        }
+        for (int k = 0; k < lanes; k++) {
+            laneY[k] = reduce(laneR, k << 4, radixPowM);
+        }
+    }
+
+    private void encryptBig() {
+        BigInteger A = ctx.base.toBigInteger(left, 0, ctx.u);
+        BigInteger B = ctx.base.toBigInteger(right, 0, ctx.v);
+        for (int i = 0; i < FF1Context.ROUNDS; i++) {
+            final BigInteger radixPowM = i % 2 == 0 ? ctx.bigRadixU : ctx.bigRadixV;
+            // C = (NUMradix(A) + y) mod radix^m
+            final BigInteger C = A.add(prfBig(i, B)).mod(radixPowM);
+            A = B;
+            B = C;
+        }
+        ctx.base.toDigits(A, left, 0, ctx.u);
+        ctx.base.toDigits(B, right, 0, ctx.v);
+    }
+
+    private void decryptBig() {
+        BigInteger A = ctx.base.toBigInteger(left, 0, ctx.u);
+        BigInteger B = ctx.base.toBigInteger(right, 0, ctx.v);
+        for (int i = FF1Context.ROUNDS - 1; i >= 0; i--) {
+            final BigInteger radixPowM = i % 2 == 0 ? ctx.bigRadixU : ctx.bigRadixV;
+            // C = (NUMradix(B) - y) mod radix^m
+            final BigInteger C = B.subtract(prfBig(i, A)).mod(radixPowM);
+            B = A;
+            A = C;
+        }
+        ctx.base.toDigits(A, left, 0, ctx.u);
+        ctx.base.toDigits(B, right, 0, ctx.v);
+    }
+
+    /**
+     * Computes y = NUM(S) for round i where NUMradix(B) is held as a BigInteger.
+     */
+    private BigInteger prfBig(int i, BigInteger numB) {
+        q[ctx.roundOffset] = (byte) i;
+        // [NUMradix(B)]^b, dropping the sign byte toByteArray may add
+        final byte[] bytes = numB.toByteArray();
+        final int len = Math.min(bytes.length, ctx.b);
+        Arrays.fill(q, q.length - ctx.b, q.length - len, (byte) 0);
+        System.arraycopy(bytes, bytes.length - len, q, q.length - len, len);
+        mac();
+        return new BigInteger(1, s, 0, ctx.d);
+    }
+
+    private void encryptLong() {
+        long A = toLong(left, ctx.u);
+        long B = toLong(right, ctx.v);
+        for (int i = 0; i < FF1Context.ROUNDS; i++) {
+            final long radixPowM = i % 2 == 0 ? ctx.powRadixU : ctx.powRadixV;
+            final long y = prfLong(i, B, radixPowM);
+            // C = (NUMradix(A) + y) mod radix^m. Both terms are below radix^m < 2^63
+            long C = A + y;
+            if (Long.compareUnsigned(C, radixPowM) >= 0) {
+                C -= radixPowM;
+            }
+            A = B;
+            B = C;
+        }
+        fromLong(A, left, ctx.u);
+        fromLong(B, right, ctx.v);
+    }
+
+    private void decryptLong() {
+        long A = toLong(left, ctx.u);
+        long B = toLong(right, ctx.v);
+        for (int i = FF1Context.ROUNDS - 1; i >= 0; i--) {
+            final long radixPowM = i % 2 == 0 ? ctx.powRadixU : ctx.powRadixV;
+            final long y = prfLong(i, A, radixPowM);
+            // C = (NUMradix(B) - y) mod radix^m
+            long C = B - y;
+            if (C < 0) {
+                C += radixPowM;
+            }
+            B = A;
+            A = C;
+        }
+        fromLong(A, left, ctx.u);
+        fromLong(B, right, ctx.v);
+    }
+
+    /**
+     * Computes y mod radix^m for round i where NUMradix(B) fits in a long. b is at most 8 and
+     * d at most 12 on this path, so S fits in 128 bits.
+     */
+    private long prfLong(int i, long numB, long radixPowM) {
+        q[ctx.roundOffset] = (byte) i;
+        writeLong(numB);
+        mac();
+        return reduce(s, 0, radixPowM);
+    }
+
+    /**
+     * Writes NUMradix(B) as b big endian bytes at the end of q.
+     */
+    private void writeLong(long numB) {
+        for (int j = 0; j < ctx.b; j++) {
+            q[q.length - 1 - j] = (byte) (numB >>> (j << 3));
+        }
+    }
+
+    /**
+     * Returns NUM(S) mod radix^m for the d bytes of S starting at off.
+     */
+    private long reduce(byte[] S, int off, long radixPowM) {
+        long hi = 0;
+        long lo = 0;
+        final int split = off + ctx.d - 8;
+        for (int j = off; j < split; j++) {
+            hi = (hi << 8) | (S[j] & 0xFF);
+        }
+        for (int j = split; j < off + ctx.d; j++) {
+            lo = (lo << 8) | (S[j] & 0xFF);
+        }
+        return MoreMath.remainderUnsigned(hi, lo, radixPowM);
+    }
+
+    private long toLong(int[] digits, int len) {
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            value = value * ctx.radix + digits[i];
+        }
+        return value;
+    }
+
+    private void fromLong(long value, int[] digits, int len) {
+        for (int i = len - 1; i >= 0; i--) {
+            digits[i] = (int) (value % ctx.radix);
+            value /= ctx.radix;
+        }
+    }
+
+    private void load(char[] in, int inOff) {
+        Objects.checkFromIndexSize(inOff, ctx.n, in.length);
+        final RadixEncoding base = ctx.base;
+        for (int i = 0; i < ctx.n; i++) {
+            final int index = base.indexOf(in[inOff + i]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Input is not a valid radix " + ctx.radix + " encoding");
+            }
+            if (i < ctx.u) {
+                left[i] = index;
+            } else {
+                right[i - ctx.u] = index;
+            }
+        }
+    }
+
+    private void store(int[] A, int lenA, int[] B, int lenB, char[] out, int outOff) {
+        Objects.checkFromIndexSize(outOff, ctx.n, out.length);
+        final RadixEncoding base = ctx.base;
+        for (int i = 0; i < lenA; i++) {
+            out[outOff + i] = base.getChar(A[i]);
+        }
+        for (int i = 0; i < lenB; i++) {
+            out[outOff + lenA + i] = base.getChar(B[i]);
+        }
+    }
+
+    /**
+     * Computes S for round i over the digits of B and loads NUM(S) into y.
+     */
+    private void prf(int i, int[] B, int lenB) {
+        // Q = ... || [i]^1 || [NUMradix(B)]^b
+        q[ctx.roundOffset] = (byte) i;
+        writeNum(B, lenB);
+        mac();
+
+        // y = NUM(S)
+        for (int l = 0; l < y.length; l++) {
+            final int o = l * 4;
+            y[l] = (s[o] << 24) | ((s[o + 1] & 0xFF) << 16) | ((s[o + 2] & 0xFF) << 8) | (s[o + 3] & 0xFF);
+        }
+    }
+
+    /**
+     * Computes S over the current contents of q.
+     */
+    private void mac() {
+        try {
+            // R = PRF(P || Q), continuing the CBC-MAC from the precomputed prefix
+            System.arraycopy(ctx.prefixState, 0, r, 0, 16);
+            for (int off = 0; off < q.length; off += 16) {
+                for (int k = 0; k < 16; k++) {
+                    x[k] = (byte) (r[k] ^ q[off + k]);
+                }
+                aes.update(x, 0, 16, r, 0);
+            }
+
+            // S = first d bytes of R || CIPH(R xor [1]^16) || CIPH(R xor [2]^16) || ... || CIPH(R xor [d/16-1]^16)
+            // The pad is built the same way FF1 has always built it (every byte set to j - 15).
+            System.arraycopy(r, 0, s, 0, 16);
+            for (int j = 16; j < ctx.d; j += 16) {
+                final byte counter = (byte) (j - 15);
+                for (int k = 0; k < 16; k++) {
+                    x[k] = (byte) (r[k] ^ counter);
+                }
+                aes.update(x, 0, 16, s, j);
+            }
+        } catch (ShortBufferException e) {
+            //This should not be possible
+            throw new SecurityException("Error computing AES-FF1 round function.", e);
+        }
+    }
+
+    /**
+     * Writes NUMradix(B) as b big endian bytes at the end of q.
+     */
+    private void writeNum(int[] B, int lenB) {
+        final int radix = ctx.radix;
+        final int k = ctx.chunkDigits;
+        Arrays.fill(num, 0);
+        int used = 0;
+        int pos = 0;
+        //first chunk takes the leftover digits so the rest are full chunks of k
+        int chunk = lenB % k == 0 ? k : lenB % k;
+        while (pos < lenB) {
+            long mul = 1;
+            long value = 0;
+            for (int t = 0; t < chunk; t++) {
+                value = value * radix + B[pos++];
+                mul *= radix;
+            }
+            // num = num * radix^chunk + value
+            long carry = value;
+            for (int l = 0; l < used; l++) {
+                final long p = (num[l] & MASK) * mul + carry;
+                num[l] = (int) p;
+                carry = p >>> 32;
+            }
+            if (carry != 0) {
+                num[used++] = (int) carry;
+            }
+            chunk = k;
+        }
+        for (int j = 0; j < ctx.b; j++) {
+            q[q.length - 1 - j] = (byte) (num[j >>> 2] >>> ((j & 3) << 3));
+        }
+    }
+
+    /**
+     * Divides y in place by the chunk divisor starting at the first non zero limb and returns
+     * the remainder.
+     */
+    private long divideY(int start) {
+        final long divisor = ctx.chunkDivisor;
+        long rem = 0;
+        for (int l = start; l < y.length; l++) {
+            final long cur = (rem << 32) | (y[l] & MASK);
+            y[l] = (int) (cur / divisor);
+            rem = cur % divisor;
+        }
+        return rem;
+    }
+
+    /**
+     * A = (A + y) mod radix^m where m is the number of digits in A.
+     */
+    private void addY(int[] A, int m) {
+        final int radix = ctx.radix;
+        int start = 0;
+        int carry = 0;
+        int pos = m - 1;
+        while (pos >= 0) {
+            while (start < y.length && y[start] == 0) {
+                start++;
+            }
+            long rem = start < y.length ? divideY(start) : 0;
+            for (int t = 0; t < ctx.chunkDigits && pos >= 0; t++) {
+                int sum = A[pos] + (int) (rem % radix) + carry;
+                rem /= radix;
+                if (sum >= radix) {
+                    sum -= radix;
+                    carry = 1;
+                } else {
+                    carry = 0;
+                }
+                A[pos--] = sum;
+            }
+        }
+    }
+
+    /**
+     * B = (B - y) mod radix^m where m is the number of digits in B.
+     */
+    private void subtractY(int[] B, int m) {
+        final int radix = ctx.radix;
+        int start = 0;
+        int borrow = 0;
+        int pos = m - 1;
+        while (pos >= 0) {
+            while (start < y.length && y[start] == 0) {
+                start++;
+            }
+            long rem = start < y.length ? divideY(start) : 0;
+            for (int t = 0; t < ctx.chunkDigits && pos >= 0; t++) {
+                int diff = B[pos] - (int) (rem % radix) - borrow;
+                rem /= radix;
+                if (diff < 0) {
+                    diff += radix;
+                    borrow = 1;
+                } else {
+                    borrow = 0;
+                }
+                B[pos--] = diff;
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.bouncycastle.util.encoders.Hex;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -14,6 +15,7 @@ import java.math.RoundingMode;
 import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
@@ -22,13 +24,16 @@ import java.util.Arrays;
  * @deprecated FF3 implementation provided for compatibility with other implementations. FF3-1 should be used instead as it addresses security flaws found in FF3.
  */
 @Deprecated
-public class FF3 {
+public class FF3 implements FFXCipher {
     private static final IvParameterSpec iv = new IvParameterSpec(new byte[16]);
     private SecretKey key;
     private RadixEncoding base;
     private byte[] tweak;
     private long minLength;
     private long maxLength;
+    private Cipher aes;
+    private int tl;
+    private int tr;
     public static boolean debug = false;
 
     public void init(SecretKey key, FFXAlgorithmParameterSpec spec) throws InvalidAlgorithmParameterException, InvalidKeyException {
@@ -43,6 +48,14 @@ public class FF3 {
         this.tweak = spec.getTweak();
         this.minLength = minlen(this.base);
         this.maxLength = maxlen(this.base);
+        this.tl = ByteBuffer.wrap(tweak).getInt(0);
+        this.tr = ByteBuffer.wrap(tweak).getInt(4);
+        try {
+            this.aes = Cipher.getInstance("AES/ECB/NoPadding");
+            this.aes.init(Cipher.ENCRYPT_MODE, this.key);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new SecurityException("Error initializing AES Cipher.", e);
+        }
     }
 
     public String encrypt(String value) throws IllegalBlockSizeException {
@@ -53,6 +66,9 @@ public class FF3 {
         if (!base.isValidEncoding(X)) {
             throw new IllegalArgumentException("Input is not a valid radix " + base.getRadix() + " encoding");
         }
+        if (FF3LongRounds.fits(base, X.length)) {
+            return new String(FF3LongRounds.encrypt(aes, base, tl, tr, X));
+        }
         int v = X.length/2;
         int u = X.length - v;
         //Let A = X[1..u]; B = X[u + 1..n]
@@ -136,6 +152,9 @@ public class FF3 {
         if (!base.isValidEncoding(X)) {
             throw new IllegalArgumentException("Input is not a valid radix " + base.getRadix() + " encoding");
         }
+        if (FF3LongRounds.fits(base, X.length)) {
+            return new String(FF3LongRounds.decrypt(aes, base, tl, tr, X));
+        }
         int v = X.length/2;
         int u = X.length - v;
 
@@ -191,6 +210,84 @@ public class FF3 {
         return sb.toString();
     }
 
+    /**
+     * Encrypts every value of in into the matching entry of out. Entries of out that are null or
+     * of the wrong length are replaced with new arrays.
+     *
+     * @param in the values to encrypt
+     * @param out receives the encrypted values, must have the same number of entries as in
+     * @throws IllegalBlockSizeException if any value has a length unsupported by the radix
+     */
+    public void encryptAll(CharSequence[] in, char[][] out) throws IllegalBlockSizeException {
+        Columns.checkSizes(in, out);
+        final int[] offsets = Columns.offsets(in);
+        final char[] buffer = Columns.pack(in, offsets);
+        cryptAll(buffer, offsets, buffer, true);
+        Columns.unpack(buffer, offsets, out);
+    }
+
+    /**
+     * Decrypts every value of in into the matching entry of out. Entries of out that are null or
+     * of the wrong length are replaced with new arrays.
+     *
+     * @param in the values to decrypt
+     * @param out receives the decrypted values, must have the same number of entries as in
+     * @throws IllegalBlockSizeException if any value has a length unsupported by the radix
+     */
+    public void decryptAll(CharSequence[] in, char[][] out) throws IllegalBlockSizeException {
+        Columns.checkSizes(in, out);
+        final int[] offsets = Columns.offsets(in);
+        final char[] buffer = Columns.pack(in, offsets);
+        cryptAll(buffer, offsets, buffer, false);
+        Columns.unpack(buffer, offsets, out);
+    }
+
+    /**
+     * Encrypts a column of values. Record i is in[offsets[i]..offsets[i + 1]) and is written to
+     * the same range of out. in and out may be the same array.
+     *
+     * @param in the concatenated values
+     * @param offsets the start of each record followed by the end of the last record
+     * @param out receives the encrypted values
+     * @throws IllegalBlockSizeException if any record has a length unsupported by the radix
+     */
+    public void encryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException {
+        cryptAll(in, offsets, out, true);
+    }
+
+    /**
+     * Decrypts a column of values. Record i is in[offsets[i]..offsets[i + 1]) and is written to
+     * the same range of out. in and out may be the same array.
+     *
+     * @param in the concatenated values
+     * @param offsets the start of each record followed by the end of the last record
+     * @param out receives the decrypted values
+     * @throws IllegalBlockSizeException if any record has a length unsupported by the radix
+     */
+    public void decryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException {
+        cryptAll(in, offsets, out, false);
+    }
+
+    private void cryptAll(char[] in, int[] offsets, char[] out, boolean encrypt) throws IllegalBlockSizeException {
+        for (int start = 0; start < offsets.length - 1;) {
+            final int end = Columns.runEnd(offsets, start);
+            final int length = offsets[start + 1] - offsets[start];
+            if (length < minLength || length > maxLength) {
+                throw new IllegalBlockSizeException("Invalid message length. AES-FF3 for radix " + base.getRadix() + " supports message lengths " + minLength + " - " + maxLength);
+            }
+            if (FF3LongRounds.fits(base, length)) {
+                FF3LongRounds.cryptAll(aes, base, tl, tr, length, in, offsets, start, end, out, encrypt);
+            } else {
+                for (int j = start; j < end; j++) {
+                    final String value = new String(in, offsets[j], length);
+                    final String result = encrypt ? encrypt(value) : decrypt(value);
+                    result.getChars(0, length, out, offsets[j]);
+                }
+            }
+            start = end;
+        }
+    }
+
     public static long minlen(RadixEncoding domain) {
         return MoreMath.logInt((int)domain.getRadix(), 100, RoundingMode.CEILING);
     }
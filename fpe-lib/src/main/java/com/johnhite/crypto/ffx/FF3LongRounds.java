@@ -0,0 +1,236 @@
+package com.johnhite.crypto.ffx;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import java.util.Objects;
+
+/**
+ * FF3 and FF3-1 rounds for messages whose halves fit in a long.
+ *
+ * Both algorithms only ever use the halves through NUMradix(REV(A)) and NUMradix(REV(B)), so
+ * the halves are kept as those numbers for all 8 rounds. NUM(S) is 128 bits and is reduced
+ * modulo radix^m with a single 128 bit remainder. The cipher must be an AES/ECB/NoPadding
+ * cipher initialized with the byte reversed key.
+ */
+final class FF3LongRounds {
+    private static final int ROUNDS = 8;
+    //number of records whose round functions are encrypted together by cryptAll
+    private static final int LANES = 16;
+
+    private FF3LongRounds() {}
+
+    /**
+     * Returns true if messages of length n can use the long rounds, i.e. radix^u fits in a long.
+     */
+    static boolean fits(RadixEncoding base, int n) {
+        return MoreMath.pow(base.getRadix(), n - n / 2) > 0;
+    }
+
+    static char[] encrypt(Cipher aes, RadixEncoding base, int tl, int tr, char[] X) {
+        final int v = X.length / 2;
+        final int u = X.length - v;
+        final long powRadixU = MoreMath.pow(base.getRadix(), u);
+        final long powRadixV = MoreMath.pow(base.getRadix(), v);
+        final byte[] block = new byte[32];
+
+        long A = numRev(base, X, 0, u);
+        long B = numRev(base, X, u, v);
+        for (int i = 0; i < ROUNDS; i++) {
+            final int W = i % 2 == 0 ? tr : tl;
+            final long radixPowM = i % 2 == 0 ? powRadixU : powRadixV;
+            final long y = prf(aes, block, W ^ i, B, radixPowM);
+            // c = (NUMradix(REV(A)) + y) mod radix^m
+            long C = A + y;
+            if (Long.compareUnsigned(C, radixPowM) >= 0) {
+                C -= radixPowM;
+            }
+            A = B;
+            B = C;
+        }
+        final char[] out = new char[X.length];
+        strRev(base, A, out, 0, u);
+        strRev(base, B, out, u, v);
+        return out;
+    }
+
+    static char[] decrypt(Cipher aes, RadixEncoding base, int tl, int tr, char[] X) {
+        final int v = X.length / 2;
+        final int u = X.length - v;
+        final long powRadixU = MoreMath.pow(base.getRadix(), u);
+        final long powRadixV = MoreMath.pow(base.getRadix(), v);
+        final byte[] block = new byte[32];
+
+        long A = numRev(base, X, 0, u);
+        long B = numRev(base, X, u, v);
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            final int W = i % 2 == 0 ? tr : tl;
+            final long radixPowM = i % 2 == 0 ? powRadixU : powRadixV;
+            final long y = prf(aes, block, W ^ i, A, radixPowM);
+            // c = (NUMradix(REV(B)) - y) mod radix^m
+            long C = B - y;
+            if (C < 0) {
+                C += radixPowM;
+            }
+            B = A;
+            A = C;
+        }
+        final char[] out = new char[X.length];
+        strRev(base, A, out, 0, u);
+        strRev(base, B, out, u, v);
+        return out;
+    }
+
+    /**
+     * Encrypts or decrypts the records of length n starting at offsets[from] through
+     * offsets[to - 1] in in into the same offsets in out. The rounds of up to 16 records are
+     * computed together so each AES call encrypts one block for every record.
+     */
+    static void cryptAll(Cipher aes, RadixEncoding base, int tl, int tr, int n, char[] in, int[] offsets, int from, int to, char[] out, boolean encrypt) {
+        Objects.checkFromToIndex(from, to, offsets.length);
+        final int v = n / 2;
+        final int u = n - v;
+        final long powRadixU = MoreMath.pow(base.getRadix(), u);
+        final long powRadixV = MoreMath.pow(base.getRadix(), v);
+        final long[] A = new long[LANES];
+        final long[] B = new long[LANES];
+        final long[] y = new long[LANES];
+        final byte[] blocks = new byte[LANES * 32];
+
+        for (int start = from; start < to; start += LANES) {
+            final int lanes = Math.min(LANES, to - start);
+            for (int k = 0; k < lanes; k++) {
+                final int off = offsets[start + k];
+                Objects.checkFromIndexSize(off, n, in.length);
+                A[k] = numRev(base, in, off, u);
+                B[k] = numRev(base, in, off + u, v);
+            }
+            if (encrypt) {
+                for (int i = 0; i < ROUNDS; i++) {
+                    final int W = i % 2 == 0 ? tr : tl;
+                    final long radixPowM = i % 2 == 0 ? powRadixU : powRadixV;
+                    prfAll(aes, blocks, lanes, W ^ i, B, radixPowM, y);
+                    for (int k = 0; k < lanes; k++) {
+                        long C = A[k] + y[k];
+                        if (Long.compareUnsigned(C, radixPowM) >= 0) {
+                            C -= radixPowM;
+                        }
+                        A[k] = B[k];
+                        B[k] = C;
+                    }
+                }
+            } else {
+                for (int i = ROUNDS - 1; i >= 0; i--) {
+                    final int W = i % 2 == 0 ? tr : tl;
+                    final long radixPowM = i % 2 == 0 ? powRadixU : powRadixV;
+                    prfAll(aes, blocks, lanes, W ^ i, A, radixPowM, y);
+                    for (int k = 0; k < lanes; k++) {
+                        long C = B[k] - y[k];
+                        if (C < 0) {
+                            C += radixPowM;
+                        }
+                        B[k] = A[k];
+                        A[k] = C;
+                    }
+                }
+            }
+            for (int k = 0; k < lanes; k++) {
+                final int off = offsets[start + k];
+                Objects.checkFromIndexSize(off, n, out.length);
+                strRev(base, A[k], out, off, u);
+                strRev(base, B[k], out, off + u, v);
+            }
+        }
+    }
+
+    /**
+     * Returns NUM(S) mod radix^m where S = REVB(CIPH(REVB(P))) and P = W xor [i]^4 || [num]^12.
+     * block must hold 32 bytes; the first 16 are the cipher input and the last 16 the output.
+     */
+    private static long prf(Cipher aes, byte[] block, int w, long num, long radixPowM) {
+        writeInput(block, 0, w, num);
+        try {
+            aes.update(block, 0, 16, block, 16);
+        } catch (ShortBufferException e) {
+            //This should not be possible
+            throw new SecurityException("Error computing AES-FF3 round function.", e);
+        }
+        return readOutput(block, 16, radixPowM);
+    }
+
+    /**
+     * Computes the round function for the first lanes entries of nums into y with a single AES
+     * call. blocks holds the inputs in its first half and the outputs in its second half.
+     */
+    private static void prfAll(Cipher aes, byte[] blocks, int lanes, int w, long[] nums, long radixPowM, long[] y) {
+        for (int k = 0; k < lanes; k++) {
+            writeInput(blocks, k << 4, w, nums[k]);
+        }
+        final int outOff = blocks.length / 2;
+        try {
+            aes.update(blocks, 0, lanes << 4, blocks, outOff);
+        } catch (ShortBufferException e) {
+            //This should not be possible
+            throw new SecurityException("Error computing AES-FF3 round function.", e);
+        }
+        for (int k = 0; k < lanes; k++) {
+            y[k] = readOutput(blocks, outOff + (k << 4), radixPowM);
+        }
+    }
+
+    /**
+     * Writes REVB(P): the little endian number followed by the reversed W.
+     */
+    private static void writeInput(byte[] block, int off, int w, long num) {
+        for (int j = 0; j < 8; j++) {
+            block[off + j] = (byte) (num >>> (j << 3));
+        }
+        block[off + 8] = 0;
+        block[off + 9] = 0;
+        block[off + 10] = 0;
+        block[off + 11] = 0;
+        block[off + 12] = (byte) w;
+        block[off + 13] = (byte) (w >>> 8);
+        block[off + 14] = (byte) (w >>> 16);
+        block[off + 15] = (byte) (w >>> 24);
+    }
+
+    /**
+     * NUM(REVB(output)) mod radix^m: reads the output as a little endian number.
+     */
+    private static long readOutput(byte[] block, int off, long radixPowM) {
+        long lo = 0;
+        long hi = 0;
+        for (int j = 7; j >= 0; j--) {
+            lo = (lo << 8) | (block[off + j] & 0xFF);
+            hi = (hi << 8) | (block[off + 8 + j] & 0xFF);
+        }
+        return MoreMath.remainderUnsigned(hi, lo, radixPowM);
+    }
+
+    /**
+     * NUMradix(REV(X[off..off+len])): the first symbol is the least significant digit.
+     */
+    private static long numRev(RadixEncoding base, char[] X, int off, int len) {
+        final long radix = base.getRadix();
+        long value = 0;
+        for (int j = len - 1; j >= 0; j--) {
+            final int index = base.indexOf(X[off + j]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Input is not a valid radix " + radix + " encoding");
+            }
+            value = value * radix + index;
+        }
+        return value;
+    }
+
+    /**
+     * REV(STRm radix(value)) written to out[off..off+len].
+     */
+    private static void strRev(RadixEncoding base, long value, char[] out, int off, int len) {
+        final long radix = base.getRadix();
+        for (int j = 0; j < len; j++) {
+            out[off + j] = base.getChar((int) (value % radix));
+            value /= radix;
+        }
+    }
+}
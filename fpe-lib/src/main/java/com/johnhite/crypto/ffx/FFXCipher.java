@@ -0,0 +1,18 @@
+package com.johnhite.crypto.ffx;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+
+/**
+ * Operations shared by the FF1, FF3 and FF3-1 implementations once they are initialized.
+ */
+interface FFXCipher {
+
+    String encrypt(String value) throws IllegalBlockSizeException, BadPaddingException;
+
+    String decrypt(String value) throws IllegalBlockSizeException, BadPaddingException;
+
+    void encryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException;
+
+    void decryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException;
+}
@@ -0,0 +1,244 @@
+package com.johnhite.crypto.ffx;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Thread safe format preserving encryption for a fixed algorithm, key and parameters.
+ *
+ * FF1, FF3 and FF3v1 keep mutable cipher state and must not be shared between threads. The
+ * service keeps one initialized instance per thread and may be shared freely. Large batches are
+ * split into ranges of records that are encrypted in parallel on a ForkJoinPool, each range
+ * using the batch methods of the worker thread's own instance.
+ */
+public final class FFXService {
+    //smallest number of records worth handing to a separate worker
+    private static final int MIN_RECORDS_PER_TASK = 1024;
+
+    public enum Algorithm {
+        FF1("AES-FF1"),
+        FF3("AES-FF3"),
+        FF3_1("AES-FF3-1");
+
+        private final String displayName;
+
+        Algorithm(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final SecretKey key;
+    private final FFXAlgorithmParameterSpec spec;
+    private final ForkJoinPool pool;
+    private final long minLength;
+    private final long maxLength;
+    private final ThreadLocal<FFXCipher> ciphers = ThreadLocal.withInitial(this::newInstance);
+
+    /**
+     * Creates a service that runs batches on the common ForkJoinPool.
+     */
+    public FFXService(Algorithm algorithm, SecretKey key, FFXAlgorithmParameterSpec spec) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(algorithm, key, spec, ForkJoinPool.commonPool());
+    }
+
+    @SuppressWarnings("deprecation")
+    public FFXService(Algorithm algorithm, SecretKey key, FFXAlgorithmParameterSpec spec, ForkJoinPool pool) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this.algorithm = algorithm;
+        this.key = key;
+        this.spec = spec;
+        this.pool = pool;
+        switch (algorithm) {
+            case FF1:
+                this.minLength = FF1.minLen(spec.getBase());
+                this.maxLength = FF1.maxLen(spec.getBase());
+                break;
+            case FF3:
+                this.minLength = FF3.minlen(spec.getBase());
+                this.maxLength = FF3.maxlen(spec.getBase());
+                break;
+            default:
+                this.minLength = FF3v1.minlen(spec.getBase());
+                this.maxLength = FF3v1.maxlen(spec.getBase());
+        }
+        //surface key and parameter errors here rather than on the first worker thread
+        try {
+            ciphers.set(init(algorithm, key, spec));
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new SecurityException("Error initializing AES Cipher.", e);
+        }
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public String encrypt(String value) throws IllegalBlockSizeException {
+        try {
+            return ciphers.get().encrypt(value);
+        } catch (BadPaddingException e) {
+            //This should not be possible
+            throw new SecurityException("Error encrypting value.", e);
+        }
+    }
+
+    public String decrypt(String value) throws IllegalBlockSizeException {
+        try {
+            return ciphers.get().decrypt(value);
+        } catch (BadPaddingException e) {
+            //This should not be possible
+            throw new SecurityException("Error decrypting value.", e);
+        }
+    }
+
+    /**
+     * Encrypts every value of in into the matching entry of out in parallel. Entries of out that
+     * are null or of the wrong length are replaced with new arrays.
+     *
+     * @param in the values to encrypt
+     * @param out receives the encrypted values, must have the same number of entries as in
+     * @throws IllegalBlockSizeException if any value has a length unsupported by the radix
+     */
+    public void encryptAll(CharSequence[] in, char[][] out) throws IllegalBlockSizeException {
+        Columns.checkSizes(in, out);
+        final int[] offsets = Columns.offsets(in);
+        final char[] buffer = Columns.pack(in, offsets);
+        encryptAll(buffer, offsets, buffer);
+        Columns.unpack(buffer, offsets, out);
+    }
+
+    /**
+     * Decrypts every value of in into the matching entry of out in parallel. Entries of out that
+     * are null or of the wrong length are replaced with new arrays.
+     *
+     * @param in the values to decrypt
+     * @param out receives the decrypted values, must have the same number of entries as in
+     * @throws IllegalBlockSizeException if any value has a length unsupported by the radix
+     */
+    public void decryptAll(CharSequence[] in, char[][] out) throws IllegalBlockSizeException {
+        Columns.checkSizes(in, out);
+        final int[] offsets = Columns.offsets(in);
+        final char[] buffer = Columns.pack(in, offsets);
+        decryptAll(buffer, offsets, buffer);
+        Columns.unpack(buffer, offsets, out);
+    }
+
+    /**
+     * Encrypts a column of values in parallel. Record i is in[offsets[i]..offsets[i + 1]) and is
+     * written to the same range of out. in and out may be the same array.
+     *
+     * @param in the concatenated values
+     * @param offsets the start of each record followed by the end of the last record
+     * @param out receives the encrypted values
+     * @throws IllegalBlockSizeException if any record has a length unsupported by the radix
+     */
+    public void encryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException {
+        checkLengths(offsets);
+        pool.invoke(new BatchTask(in, offsets, 0, offsets.length - 1, out, true));
+    }
+
+    /**
+     * Decrypts a column of values in parallel. Record i is in[offsets[i]..offsets[i + 1]) and is
+     * written to the same range of out. in and out may be the same array.
+     *
+     * @param in the concatenated values
+     * @param offsets the start of each record followed by the end of the last record
+     * @param out receives the decrypted values
+     * @throws IllegalBlockSizeException if any record has a length unsupported by the radix
+     */
+    public void decryptAll(char[] in, int[] offsets, char[] out) throws IllegalBlockSizeException {
+        checkLengths(offsets);
+        pool.invoke(new BatchTask(in, offsets, 0, offsets.length - 1, out, false));
+    }
+
+    /**
+     * Checks every record length up front so the workers never see a checked exception.
+     */
+    private void checkLengths(int[] offsets) throws IllegalBlockSizeException {
+        for (int i = 0; i < offsets.length - 1; i++) {
+            final int length = offsets[i + 1] - offsets[i];
+            if (length < minLength || length > maxLength) {
+                throw new IllegalBlockSizeException("Invalid message length. " + algorithm.displayName + " for radix " + spec.getBase().getRadix() + " supports message lengths " + minLength + " - " + maxLength);
+            }
+        }
+    }
+
+    private FFXCipher newInstance() {
+        try {
+            return init(algorithm, key, spec);
+        } catch (GeneralSecurityException e) {
+            //This should not be possible, the same parameters were accepted by the constructor
+            throw new SecurityException("Error initializing AES Cipher.", e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static FFXCipher init(Algorithm algorithm, SecretKey key, FFXAlgorithmParameterSpec spec) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchPaddingException, NoSuchAlgorithmException {
+        switch (algorithm) {
+            case FF1:
+                final FF1 ff1 = new FF1();
+                ff1.init(key, spec);
+                return ff1;
+            case FF3:
+                final FF3 ff3 = new FF3();
+                ff3.init(key, spec);
+                return ff3;
+            default:
+                final FF3v1 ff3v1 = new FF3v1();
+                ff3v1.init(key, spec);
+                return ff3v1;
+        }
+    }
+
+    /**
+     * Encrypts or decrypts records [from, to) by splitting the range in half until it is small
+     * enough to run on the current worker's cipher.
+     */
+    private final class BatchTask extends RecursiveAction {
+        private final char[] in;
+        private final int[] offsets;
+        private final int from;
+        private final int to;
+        private final char[] out;
+        private final boolean encrypt;
+
+        BatchTask(char[] in, int[] offsets, int from, int to, char[] out, boolean encrypt) {
+            this.in = in;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+            this.encrypt = encrypt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= Math.max(MIN_RECORDS_PER_TASK, (offsets.length - 1) / (pool.getParallelism() * 4))) {
+                //offsets are absolute positions, so a slice of them describes the sub batch
+                final int[] slice = Arrays.copyOfRange(offsets, from, to + 1);
+                try {
+                    if (encrypt) {
+                        ciphers.get().encryptAll(in, slice, out);
+                    } else {
+                        ciphers.get().decryptAll(in, slice, out);
+                    }
+                } catch (IllegalBlockSizeException e) {
+                    //This should not be possible, lengths are checked before the batch is split
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(in, offsets, from, mid, out, encrypt), new BatchTask(in, offsets, mid, to, out, encrypt));
+        }
+    }
+}
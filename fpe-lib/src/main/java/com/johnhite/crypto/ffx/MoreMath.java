@@ -31,6 +31,69 @@ public class MoreMath {
         return (int)Math.ceil(val);
     }
 
+    /**
+     * Returns radix^exponent, or -1 if the result does not fit in a signed long.
+     */
+    public static long pow(long radix, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            if (result > Long.MAX_VALUE / radix) {
+                return -1;
+            }
+            result *= radix;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the remainder of the unsigned 128 bit value hi:lo divided by the unsigned 64 bit
+     * divisor m. Based on divlu from Hacker's Delight (2nd ed. 9-3), which divides using 32 bit
+     * digits so every intermediate fits in a long.
+     *
+     * @param hi high 64 bits of the dividend
+     * @param lo low 64 bits of the dividend
+     * @param m divisor, must not be zero
+     * @return (hi * 2^64 + lo) mod m
+     */
+    public static long remainderUnsigned(long hi, long lo, long m) {
+        final long b = 1L << 32;
+        hi = Long.remainderUnsigned(hi, m);
+        if (hi == 0) {
+            return Long.remainderUnsigned(lo, m);
+        }
+        //normalize so the top bit of the divisor is set
+        final int s = Long.numberOfLeadingZeros(m);
+        final long vn = m << s;
+        final long vn1 = vn >>> 32;
+        final long vn0 = vn & 0xFFFFFFFFL;
+        final long un32 = s == 0 ? hi : (hi << s) | (lo >>> (64 - s));
+        final long un10 = lo << s;
+        final long un1 = un10 >>> 32;
+        final long un0 = un10 & 0xFFFFFFFFL;
+
+        long q1 = Long.divideUnsigned(un32, vn1);
+        long rhat = un32 - q1 * vn1;
+        while (Long.compareUnsigned(q1, b) >= 0 || Long.compareUnsigned(q1 * vn0, (rhat << 32) | un1) > 0) {
+            q1--;
+            rhat += vn1;
+            if (Long.compareUnsigned(rhat, b) >= 0) {
+                break;
+            }
+        }
+        final long un21 = (un32 << 32) + un1 - q1 * vn;
+
+        long q0 = Long.divideUnsigned(un21, vn1);
+        rhat = un21 - q0 * vn1;
+        while (Long.compareUnsigned(q0, b) >= 0 || Long.compareUnsigned(q0 * vn0, (rhat << 32) | un0) > 0) {
+            q0--;
+            rhat += vn1;
+            if (Long.compareUnsigned(rhat, b) >= 0) {
+                break;
+            }
+        }
+        return ((un21 << 32) + un0 - q0 * vn) >>> s;
+    }
+
     public static BigDecimal log(int base, BigDecimal x) {
         BigDecimal result = BigDecimal.ZERO;
 
@@ -1,9 +1,8 @@
 package com.johnhite.crypto.ffx;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 public final class RadixEncoders {
 
@@ -43,17 +42,43 @@ public final class RadixEncoders {
         return alpha.toString();
     }
 
+    /**
+     * Encoding over a fixed table of symbols. Symbols are resolved through a direct indexed
+     * table covering every char up to the largest symbol, with -1 marking chars that are not
+     * symbols, so lookups never box or hash.
+     */
     private static class TableRadixEncoding extends RadixEncoding {
         protected char[] table;
-        protected Map<Character, Integer> indices = new HashMap<>();
+        protected short[] indices;
         protected TableRadixEncoding(String tableChars) {
             table = tableChars.toCharArray();
+            if (table.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Table encodings support at most " + Short.MAX_VALUE + " symbols");
+            }
+            char max = 0;
+            for (char c : table) {
+                max = (char) Math.max(max, c);
+            }
+            indices = new short[max + 1];
+            Arrays.fill(indices, (short) -1);
             for (int i =0; i< table.length; i++) {
-                indices.put(table[i], i);
+                indices[table[i]] = (short) i;
+            }
+        }
+        @Override
+        public int indexOf(char c) {
+            return c < indices.length ? indices[c] : -1;
+        }
+        @Override
+        public char getChar(int index) {
+            if (index < 0 || index >= table.length) {
+                throw new IllegalArgumentException("Input is not a valid for this radix encoding");
             }
+            return table[index];
         }
         public Integer internalGetIndex(char c) {
-            return indices.get(c);
+            final int i = indexOf(c);
+            return i < 0 ? null : i;
         }
         public Character internalGetChar(int index) {
             return table[index];
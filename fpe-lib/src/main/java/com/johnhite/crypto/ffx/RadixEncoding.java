@@ -1,27 +1,38 @@
 package com.johnhite.crypto.ffx;
 
-import org.bouncycastle.util.Arrays;
-
 import java.math.BigInteger;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
 
 public abstract class RadixEncoding {
+    //word counts at or below this are converted one word at a time
+    private static final int SMALL_WORDS = 16;
+    private volatile Powers powers;
 
     public boolean isValidEncoding(char[] chars) {
         for (char c : chars) {
-            if (null == internalGetIndex(c)) {
+            if (indexOf(c) < 0) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Returns the index of c in this encoding, or -1 if c is not a symbol of this encoding.
+     * Subclasses should override this with a lookup that does not box.
+     *
+     * @param c the symbol
+     * @return the index of c or -1
+     */
+    public int indexOf(char c) {
+        final Integer i = internalGetIndex(c);
+        return i == null ? -1 : i;
+    }
+
     public int getIndex(char c) {
-        Integer i = internalGetIndex(c);
-        if (i == null) {
+        final int i = indexOf(c);
+        if (i < 0) {
             throw new IllegalArgumentException("Input is not a valid for this radix encoding");
         }
         return i;
@@ -67,37 +78,206 @@ public abstract class RadixEncoding {
      * Converts the base radix number represented by the characters in symbols to a
      * base 10 number.
      *
+     * Digits are packed into long words of as many digits as fit, and the words are combined
+     * by recursively splitting them in two and joining the halves with a cached power of the
+     * radix. With BigInteger's Karatsuba/Toom-Cook multiplication this is subquadratic in the
+     * number of symbols.
+     *
      * @param symbols base radix number
      * @return
      */
     public BigInteger toBase10(char[] symbols) {
-        final BigInteger rad = BigInteger.valueOf(getRadix());
-        BigInteger x = BigInteger.ZERO;
-        BigInteger radPow = BigInteger.ONE;
-        for (int i=symbols.length-1; i >=0; i--) {
-            x = x.add(radPow.multiply(BigInteger.valueOf(getIndex(symbols[i]))));
-            radPow = radPow.multiply(rad);
+        final int[] digits = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            digits[i] = getIndex(symbols[i]);
         }
-        return x;
+        return toBigInteger(digits, 0, digits.length);
     }
 
     /**
      * Converts the base 10 number n into a base radix representation of the number.
      *
+     * The number is split recursively by cached powers of the radix into long words, and each
+     * word is then expanded into digits with long arithmetic.
+     *
      * @param n base 10 number to convert
      * @return
      */
     public char[] fromBase10(BigInteger n) {
-        LinkedList<Integer> ints = new LinkedList<>();
-        final BigInteger rad = BigInteger.valueOf(getRadix());
-        BigInteger val = n;
-        while (val.compareTo(BigInteger.ZERO) > 0) {
-            BigInteger[] divAndRem = val.divideAndRemainder(rad);
-            ints.addFirst(divAndRem[1].intValue());
-            val = divAndRem[0];
+        if (n.signum() <= 0) {
+            return new char[0];
+        }
+        //enough digits for any number of this bit length, the extra leading zeros are skipped below
+        final int len = (int) Math.ceil(n.bitLength() / (Math.log(getRadix()) / Math.log(2))) + 1;
+        final int[] digits = new int[len];
+        toDigits(n, digits, 0, len);
+        int start = 0;
+        while (start < len && digits[start] == 0) {
+            start++;
+        }
+        final char[] result = new char[len - start];
+        for (int i = start; i < len; i++) {
+            result[i - start] = getChar(digits[i]);
         }
-
-        char[] result = getChars(ints);
         return result;
     }
+
+    /**
+     * Returns NUMradix(digits[off..off+len]), most significant digit first.
+     */
+    BigInteger toBigInteger(int[] digits, int off, int len) {
+        final Powers powers = powers(0);
+        final int k = powers.wordDigits;
+        final int count = (len + k - 1) / k;
+        if (count <= 1) {
+            return BigInteger.valueOf(word(digits, off, len));
+        }
+        //the first word takes the leftover digits so the rest are full words of k digits
+        final long[] words = new long[count];
+        final int first = len - (count - 1) * k;
+        words[0] = word(digits, off, first);
+        for (int w = 1; w < count; w++) {
+            words[w] = word(digits, off + first + (w - 1) * k, k);
+        }
+        return combine(words, 0, count, powers(count));
+    }
+
+    /**
+     * Writes STRm radix(n) to digits[off..off+len], most significant digit first. n must be
+     * less than radix^len.
+     */
+    void toDigits(BigInteger n, int[] digits, int off, int len) {
+        if (len == 0) {
+            return;
+        }
+        final Powers powers = powers(0);
+        final int k = powers.wordDigits;
+        final int count = (len + k - 1) / k;
+        final long[] words = new long[count];
+        split(n, words, 0, count, powers(count));
+        //the first word holds the leftover digits
+        final int first = len - (count - 1) * k;
+        unword(words[0], digits, off, first);
+        for (int w = 1; w < count; w++) {
+            unword(words[w], digits, off + first + (w - 1) * k, k);
+        }
+    }
+
+    private long word(int[] digits, int off, int len) {
+        final long radix = getRadix();
+        long value = 0;
+        for (int i = off; i < off + len; i++) {
+            value = value * radix + digits[i];
+        }
+        return value;
+    }
+
+    private void unword(long value, int[] digits, int off, int len) {
+        final long radix = getRadix();
+        for (int i = off + len - 1; i >= off; i--) {
+            digits[i] = (int) (value % radix);
+            value /= radix;
+        }
+    }
+
+    /**
+     * Value of words[from..to) in base wordRadix. The low half is always a power of two words
+     * long so only the squares wordRadix^(2^j) are needed.
+     */
+    private static BigInteger combine(long[] words, int from, int to, Powers powers) {
+        final int count = to - from;
+        if (count <= SMALL_WORDS) {
+            final BigInteger wordRadix = BigInteger.valueOf(powers.wordRadix);
+            BigInteger x = BigInteger.valueOf(words[from]);
+            for (int w = from + 1; w < to; w++) {
+                x = x.multiply(wordRadix).add(BigInteger.valueOf(words[w]));
+            }
+            return x;
+        }
+        final int j = 31 - Integer.numberOfLeadingZeros(count - 1);
+        final int mid = to - (1 << j);
+        return combine(words, from, mid, powers).multiply(powers.squares[j]).add(combine(words, mid, to, powers));
+    }
+
+    /**
+     * Inverse of combine: writes n into words[from..to) in base wordRadix.
+     */
+    private static void split(BigInteger n, long[] words, int from, int to, Powers powers) {
+        final int count = to - from;
+        if (count <= SMALL_WORDS) {
+            if (n.bitLength() < 64) {
+                long value = n.longValue();
+                for (int w = to - 1; w >= from; w--) {
+                    words[w] = value % powers.wordRadix;
+                    value /= powers.wordRadix;
+                }
+                return;
+            }
+            final BigInteger wordRadix = BigInteger.valueOf(powers.wordRadix);
+            for (int w = to - 1; w >= from; w--) {
+                final BigInteger[] qr = n.divideAndRemainder(wordRadix);
+                words[w] = qr[1].longValue();
+                n = qr[0];
+            }
+            return;
+        }
+        final int j = 31 - Integer.numberOfLeadingZeros(count - 1);
+        final int mid = to - (1 << j);
+        final BigInteger[] qr = n.divideAndRemainder(powers.squares[j]);
+        split(qr[0], words, from, mid, powers);
+        split(qr[1], words, mid, to, powers);
+    }
+
+    /**
+     * Returns the cached powers with enough squares to split count words.
+     */
+    private Powers powers(int count) {
+        Powers p = powers;
+        if (p == null) {
+            p = new Powers(getRadix());
+            powers = p;
+        }
+        final int needed = count <= SMALL_WORDS ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+        if (p.squares.length < needed) {
+            p = p.extend(needed);
+            powers = p;
+        }
+        return p;
+    }
+
+    /**
+     * Immutable set of radix powers. Replaced as a whole when more squares are needed, so a
+     * racing thread at worst computes the same squares twice.
+     */
+    private static final class Powers {
+        //digits per long word and radix^wordDigits
+        final int wordDigits;
+        final long wordRadix;
+        //squares[j] = wordRadix^(2^j)
+        final BigInteger[] squares;
+
+        Powers(long radix) {
+            int k = 1;
+            while (MoreMath.pow(radix, k + 1) > 0) {
+                k++;
+            }
+            this.wordDigits = k;
+            this.wordRadix = MoreMath.pow(radix, k);
+            this.squares = new BigInteger[0];
+        }
+
+        private Powers(Powers p, BigInteger[] squares) {
+            this.wordDigits = p.wordDigits;
+            this.wordRadix = p.wordRadix;
+            this.squares = squares;
+        }
+
+        Powers extend(int length) {
+            final BigInteger[] next = Arrays.copyOf(squares, length);
+            for (int j = squares.length; j < length; j++) {
+                next[j] = j == 0 ? BigInteger.valueOf(wordRadix) : next[j - 1].multiply(next[j - 1]);
+            }
+            return new Powers(this, next);
+        }
+    }
 }
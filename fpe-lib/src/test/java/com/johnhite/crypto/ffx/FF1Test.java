@@ -2,6 +2,7 @@ package com.johnhite.crypto.ffx;
 
 import org.bouncycastle.util.encoders.Hex;
 import static org.junit.Assert.*;
+import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -9,6 +10,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -126,6 +128,24 @@ public class FF1Test {
         assertEquals("0123456789abcdefghi0123456789abcdefghi0123456789abcdefghi0123456789abcdefghi", encrypted);
     }
 
+    @Test
+    public void testEncryptWithLongHalves() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48}));
+
+        //halves of 300 digits use BigInteger rounds, the expected value comes from the digit rounds
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            sb.append("0123456789");
+        }
+        String encrypted = ff1.encrypt(sb.toString());
+        assertEquals("65844711580609622210376125494783", encrypted.substring(0, 32));
+        assertEquals("59562286830762237652639061487379", encrypted.substring(568));
+        assertEquals(sb.toString(), ff1.decrypt(encrypted));
+    }
+
     @Test
     public void testEncryptMinLengthException() throws Exception {
 
@@ -194,6 +214,335 @@ public class FF1Test {
         }
     }
 
+    @Test
+    public void testContextMatchesTestVectors() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48}));
+
+        FF1Context context = ff1.context(10);
+        assertEquals("6124200773", context.encrypt("0123456789"));
+        assertEquals("0123456789", context.decrypt("6124200773"));
+
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE36, new byte[]{55, 55, 55, 55, 112, 113, 114, 115, 55, 55, 55}));
+        context = ff1.context(76);
+        assertEquals("jt7kfwms77q8j0qm9osehwdao5w45zeuduykbijo9ofwociihsmqao6p4asr27caddrqpn7huxi7",
+                context.encrypt("0123456789abcdefghi0123456789abcdefghi0123456789abcdefghi0123456789abcdefghi"));
+        assertEquals("0123456789abcdefghi0123456789abcdefghi0123456789abcdefghi0123456789abcdefghi",
+                context.decrypt("jt7kfwms77q8j0qm9osehwdao5w45zeuduykbijo9ofwociihsmqao6p4asr27caddrqpn7huxi7"));
+    }
+
+    @Test
+    public void testContextLengthMismatch() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10));
+        FF1Context context = ff1.context(10);
+
+        try {
+            context.encrypt("01234567890");
+            fail("Expected IllegalBlockSizeException but no exception was thrown");
+        } catch (IllegalBlockSizeException e) {
+            assertEquals("Invalid message length. This AES-FF1 context only supports messages of length 10", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testEngineCacheIsBounded() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10));
+        FF1Context context = ff1.context(10);
+        FF1Engine engine = context.engine();
+        assertSame(context, engine.getContext());
+        assertSame(engine, context.engine());
+
+        //a few other contexts in between keep the engine
+        for (int length = 11; length < 15; length++) {
+            ff1.context(length).engine();
+        }
+        assertSame(engine, context.engine());
+
+        //many other contexts on this thread drop it, so discarded contexts are not kept alive
+        for (int length = 11; length < 50; length++) {
+            ff1.context(length).engine();
+        }
+        assertNotSame(engine, context.engine());
+        assertEquals("0123456789", context.decrypt(context.encrypt("0123456789")));
+    }
+
+    @Test
+    public void testContextIsThreadSafe() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10));
+        final FF1Context context = ff1.context(16);
+
+        Random rand = new Random(42);
+        final List<String> values = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (int j = 0; j < 200; j++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(RadixEncoders.BASE10.getChar(rand.nextInt(10)));
+            }
+            values.add(sb.toString());
+            expected.add(ff1.encrypt(sb.toString()));
+        }
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < values.size(); j++) {
+                        assertEquals(expected.get(j), context.encrypt(values.get(j)));
+                        assertEquals(values.get(j), context.decrypt(expected.get(j)));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    @Test
+    public void testEngineWithOffsets() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48}));
+        FF1Engine engine = ff1.context(10).newEngine();
+
+        char[] buffer = "xx0123456789yy".toCharArray();
+        engine.encrypt(buffer, 2, buffer, 2);
+        assertEquals("xx6124200773yy", new String(buffer));
+        engine.decrypt(buffer, 2, buffer, 2);
+        assertEquals("xx0123456789yy", new String(buffer));
+    }
+
+    @Test
+    public void testEngineDoesNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48}));
+        FF1Engine engine = ff1.context(16).newEngine();
+        char[] in = "4111111111111111".toCharArray();
+        char[] out = new char[16];
+        for (int i = 0; i < 1000; i++) {
+            engine.encrypt(in, 0, out, 0);
+            engine.decrypt(out, 0, out, 0);
+        }
+
+        final int iterations = 10000;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            engine.encrypt(in, 0, out, 0);
+            engine.decrypt(out, 0, out, 0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertArrayEquals(in, out);
+        //any allocation in the round function costs at least 16 bytes per call. Less than a byte
+        //per call on average leaves room for the JIT while still catching real garbage.
+        assertTrue("Allocated " + allocated + " bytes", allocated < iterations);
+    }
+
+    @Test
+    public void testEncryptAllMatchesEncrypt() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE36, new byte[]{55, 55, 55, 55, 112, 113, 114, 115, 55, 55, 55}));
+
+        //mixed lengths, including runs longer than a lane group and values too long for the long path
+        Random rand = new Random(4);
+        String[] values = new String[100];
+        for (int j = 0; j < values.length; j++) {
+            int length = j < 40 ? 12 : 6 + rand.nextInt(40);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append(RadixEncoders.BASE36.getChar(rand.nextInt(36)));
+            }
+            values[j] = sb.toString();
+        }
+
+        char[][] encrypted = new char[values.length][];
+        ff1.encryptAll(values, encrypted);
+        for (int j = 0; j < values.length; j++) {
+            assertEquals(ff1.encrypt(values[j]), new String(encrypted[j]));
+        }
+
+        String[] ciphertexts = new String[values.length];
+        for (int j = 0; j < values.length; j++) {
+            ciphertexts[j] = new String(encrypted[j]);
+        }
+        char[][] decrypted = new char[values.length][];
+        ff1.decryptAll(ciphertexts, decrypted);
+        for (int j = 0; j < values.length; j++) {
+            assertEquals(values[j], new String(decrypted[j]));
+        }
+    }
+
+    @Test
+    public void testEncryptAllAlternatingLengths() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10));
+
+        //15 and 16 digit card numbers interleaved, every record switches length
+        Random rand = new Random(5);
+        String[] values = new String[64];
+        for (int j = 0; j < values.length; j++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 15 + (j & 1); i++) {
+                sb.append((char) ('0' + rand.nextInt(10)));
+            }
+            values[j] = sb.toString();
+        }
+        FF1Context short15 = ff1.context(15);
+        FF1Context long16 = ff1.context(16);
+
+        char[][] encrypted = new char[values.length][];
+        ff1.encryptAll(values, encrypted);
+        String[] ciphertexts = new String[values.length];
+        for (int j = 0; j < values.length; j++) {
+            ciphertexts[j] = new String(encrypted[j]);
+            assertEquals(ff1.encrypt(values[j]), ciphertexts[j]);
+        }
+        char[][] decrypted = new char[values.length][];
+        ff1.decryptAll(ciphertexts, decrypted);
+        for (int j = 0; j < values.length; j++) {
+            assertEquals(values[j], new String(decrypted[j]));
+        }
+
+        //both lengths kept their precomputed contexts through the batch
+        assertSame(short15, ff1.context(15));
+        assertSame(long16, ff1.context(16));
+    }
+
+    @Test
+    public void testEncryptAllColumnar() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48}));
+
+        char[] column = "01234567890123456789012345678901234567890123456789".toCharArray();
+        int[] offsets = new int[]{0, 10, 20, 30, 50};
+        char[] out = new char[column.length];
+        ff1.encryptAll(column, offsets, out);
+        assertEquals("6124200773", new String(out, 0, 10));
+        for (int j = 0; j < offsets.length - 1; j++) {
+            String value = new String(column, offsets[j], offsets[j + 1] - offsets[j]);
+            assertEquals(ff1.encrypt(value), new String(out, offsets[j], offsets[j + 1] - offsets[j]));
+        }
+
+        //in place
+        ff1.decryptAll(out, offsets, out);
+        assertEquals(new String(column), new String(out));
+    }
+
+    @Test(expected = IllegalBlockSizeException.class)
+    public void testEncryptAllMinLengthException() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10));
+        ff1.encryptAll(new String[]{"0123456789", "12345"}, new char[2][]);
+    }
+
+    @Ignore
+    @Test
+    public void testEncryptAllPerformance() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        ff1.init(key, new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48}));
+
+        Random rand = new Random();
+        String[] values = new String[1000000];
+        for (int j = 0; j < values.length; j++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(RadixEncoders.BASE10.getChar(rand.nextInt(10)));
+            }
+            values[j] = sb.toString();
+        }
+        char[][] out = new char[values.length][];
+
+        for (int rep = 0; rep < 3; rep++) {
+            long start = System.currentTimeMillis();
+            for (int j = 0; j < values.length; j++) {
+                ff1.encrypt(values[j]);
+            }
+            long end = System.currentTimeMillis();
+            System.out.println("Encrypt one at a time: " + (end - start) + "ms");
+
+            start = System.currentTimeMillis();
+            ff1.encryptAll(values, out);
+            end = System.currentTimeMillis();
+            System.out.println("Encrypt with encryptAll: " + (end - start) + "ms");
+        }
+    }
+
+    @Ignore
+    @Test
+    public void testContextPerformance() throws Exception {
+        byte[] keyBytes = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FF1 ff1 = new FF1();
+        FFXAlgorithmParameterSpec spec = new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, new byte[]{57, 56, 55, 54, 53, 52, 51, 50, 49, 48});
+        ff1.init(key, spec);
+
+        Random rand = new Random();
+        List<String> values = new ArrayList<String>();
+        for (int j = 0; j < 100000; j++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(RadixEncoders.BASE10.getChar(rand.nextInt(10)));
+            }
+            values.add(sb.toString());
+        }
+
+        //warm up both paths before timing
+        FF1Context context = ff1.context(16);
+        for (int j = 0; j < values.size(); j++) {
+            context.encrypt(values.get(j));
+            ff1.prf(new byte[32]);
+        }
+
+        long start = System.currentTimeMillis();
+        for (int j = 0; j < values.size(); j++) {
+            ff1.init(key, spec); //forces the per call setup the context avoids
+            ff1.encrypt(values.get(j));
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Encrypt with per call setup: " + (end - start) + "ms");
+
+        start = System.currentTimeMillis();
+        for (int j = 0; j < values.size(); j++) {
+            context.encrypt(values.get(j));
+        }
+        end = System.currentTimeMillis();
+        System.out.println("Encrypt with FF1Context:     " + (end - start) + "ms");
+    }
+
     @Ignore
     @Test
     public void testPerformance() throws Exception {
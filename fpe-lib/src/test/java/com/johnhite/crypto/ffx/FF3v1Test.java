@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -170,4 +171,39 @@ public class FF3v1Test {
         System.out.println(plaintext);
         assertEquals("890121234567890000", plaintext);
     }
+
+    @Test
+    public void testEncryptAllMatchesEncrypt() throws Exception {
+        byte[] keyBytes = Hex.decode("EF4359D8D580AA4F7F036D6F04FC6A94");
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        FFXAlgorithmParameterSpec params = new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, Hex.decode("D8E7920AFA330A73"));
+        FF3v1 ff3 = new FF3v1();
+        ff3.init(key, params);
+
+        //mixed lengths, including runs longer than a lane group and values too long for the long path
+        Random rand = new Random(3);
+        String[] values = new String[100];
+        for (int j = 0; j < values.length; j++) {
+            int length = j < 40 ? 18 : 6 + rand.nextInt(50);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append(RadixEncoders.BASE10.getChar(rand.nextInt(10)));
+            }
+            values[j] = sb.toString();
+        }
+
+        char[][] encrypted = new char[values.length][];
+        ff3.encryptAll(values, encrypted);
+        String[] ciphertexts = new String[values.length];
+        for (int j = 0; j < values.length; j++) {
+            ciphertexts[j] = new String(encrypted[j]);
+            assertEquals(ff3.encrypt(values[j]), ciphertexts[j]);
+        }
+
+        char[][] decrypted = new char[values.length][];
+        ff3.decryptAll(ciphertexts, decrypted);
+        for (int j = 0; j < values.length; j++) {
+            assertEquals(values[j], new String(decrypted[j]));
+        }
+    }
 }
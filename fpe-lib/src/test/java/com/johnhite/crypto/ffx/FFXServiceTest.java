@@ -0,0 +1,145 @@
+package com.johnhite.crypto.ffx;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class FFXServiceTest {
+    private static final SecretKey KEY = new SecretKeySpec(Hex.decode("EF4359D8D580AA4F7F036D6F04FC6A94"), "AES");
+    private static final FFXAlgorithmParameterSpec SPEC = new FFXAlgorithmParameterSpec(RadixEncoders.BASE10, Hex.decode("D8E7920AFA330A73"));
+
+    @Test
+    public void testEncryptAllMatchesSequential() throws Exception {
+        String[] values = randomValues(10000, new Random(5));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (FFXService.Algorithm algorithm : FFXService.Algorithm.values()) {
+                FFXService service = new FFXService(algorithm, KEY, SPEC, pool);
+                FFXCipher sequential = sequential(algorithm);
+
+                char[][] encrypted = new char[values.length][];
+                service.encryptAll(values, encrypted);
+                String[] ciphertexts = new String[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    ciphertexts[j] = new String(encrypted[j]);
+                    assertEquals(sequential.encrypt(values[j]), ciphertexts[j]);
+                }
+
+                char[][] decrypted = new char[values.length][];
+                service.decryptAll(ciphertexts, decrypted);
+                for (int j = 0; j < values.length; j++) {
+                    assertEquals(values[j], new String(decrypted[j]));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testEncryptIsThreadSafe() throws Exception {
+        FFXService service = new FFXService(FFXService.Algorithm.FF3_1, KEY, SPEC);
+        assertEquals("477064185124354662", service.encrypt("890121234567890000"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        assertEquals("477064185124354662", service.encrypt("890121234567890000"));
+                        assertEquals("890121234567890000", service.decrypt("477064185124354662"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalBlockSizeException.class)
+    public void testEncryptAllMinLengthException() throws Exception {
+        FFXService service = new FFXService(FFXService.Algorithm.FF1, KEY, SPEC);
+        service.encryptAll(new String[]{"0123456789", "12345"}, new char[2][]);
+    }
+
+    @Ignore
+    @Test
+    public void testScaling() throws Exception {
+        String[] values = randomValues(500000, new Random());
+        int[] offsets = Columns.offsets(values);
+        char[] column = Columns.pack(values, offsets);
+        char[] out = new char[column.length];
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (FFXService.Algorithm algorithm : FFXService.Algorithm.values()) {
+            double single = 0;
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                FFXService service = new FFXService(algorithm, KEY, SPEC, pool);
+                service.encryptAll(column, offsets, out); //warm up
+                long start = System.nanoTime();
+                service.encryptAll(column, offsets, out);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                pool.shutdown();
+                double rate = values.length / seconds;
+                if (threads == 1) {
+                    single = rate;
+                }
+                System.out.printf("%s threads=%d: %.0f values/s, speedup %.2fx%n", algorithm, threads, rate, rate / single);
+                if (threads == cores) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String[] randomValues(int count, Random rand) {
+        String[] values = new String[count];
+        for (int j = 0; j < count; j++) {
+            //mostly 16 digit values with some longer ones mixed in
+            int length = rand.nextInt(10) == 0 ? 30 + rand.nextInt(20) : 16;
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append(RadixEncoders.BASE10.getChar(rand.nextInt(10)));
+            }
+            values[j] = sb.toString();
+        }
+        return values;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static FFXCipher sequential(FFXService.Algorithm algorithm) throws Exception {
+        switch (algorithm) {
+            case FF1:
+                FF1 ff1 = new FF1();
+                ff1.init(KEY, SPEC);
+                return ff1;
+            case FF3:
+                FF3 ff3 = new FF3();
+                ff3.init(KEY, SPEC);
+                return ff3;
+            default:
+                FF3v1 ff3v1 = new FF3v1();
+                ff3v1.init(KEY, SPEC);
+                return ff3v1;
+        }
+    }
+}
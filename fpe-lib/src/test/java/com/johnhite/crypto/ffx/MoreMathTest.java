@@ -0,0 +1,38 @@
+package com.johnhite.crypto.ffx;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoreMathTest {
+
+    @Test
+    public void testPow() {
+        assertEquals(1, MoreMath.pow(10, 0));
+        assertEquals(1000000000000000000L, MoreMath.pow(10, 18));
+        assertEquals(-1, MoreMath.pow(10, 19));
+        assertEquals(1L << 62, MoreMath.pow(2, 62));
+        assertEquals(-1, MoreMath.pow(2, 63));
+        assertEquals(-1, MoreMath.pow(65536, 4));
+    }
+
+    @Test
+    public void testRemainderUnsigned() {
+        Random rand = new Random(1);
+        BigInteger twoTo64 = BigInteger.ONE.shiftLeft(64);
+        for (int i = 0; i < 100000; i++) {
+            long hi = rand.nextLong();
+            long lo = rand.nextLong();
+            long m = rand.nextLong() >>> (1 + rand.nextInt(62));
+            if (m == 0) {
+                m = 1;
+            }
+            BigInteger value = new BigInteger(Long.toUnsignedString(hi)).multiply(twoTo64).add(new BigInteger(Long.toUnsignedString(lo)));
+            long expected = value.mod(BigInteger.valueOf(m)).longValue();
+            assertEquals(expected, MoreMath.remainderUnsigned(hi, lo, m));
+        }
+    }
+}
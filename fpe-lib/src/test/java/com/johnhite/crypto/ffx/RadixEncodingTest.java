@@ -8,6 +8,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class RadixEncodingTest {
 
     @Ignore
@@ -59,4 +63,110 @@ public class RadixEncodingTest {
         char[] result = RadixEncoders.BASE36.fromBase10(val);
         System.out.println(new String(result));
     }
+
+    @Test
+    public void testIndexOf() {
+        RadixEncoding[] encodings = {RadixEncoders.BASE10, RadixEncoders.BASE16, RadixEncoders.BASE36,
+                RadixEncoders.ASCII_PRINTABLE, RadixEncoders.ASCII_DOMAIN, RadixEncoders.ASCII_EMAIL};
+        for (RadixEncoding encoding : encodings) {
+            for (int i = 0; i < encoding.getRadix(); i++) {
+                assertEquals(i, encoding.indexOf(encoding.getChar(i)));
+                assertEquals(i, encoding.getIndex(encoding.getChar(i)));
+            }
+            int symbols = 0;
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                if (encoding.indexOf((char) c) >= 0) {
+                    symbols++;
+                }
+            }
+            assertEquals(encoding.getRadix(), symbols);
+        }
+        assertEquals(-1, RadixEncoders.BASE10.indexOf('a'));
+        assertEquals(-1, RadixEncoders.BASE36.indexOf('\uFFFF'));
+        assertFalse(RadixEncoders.BASE10.isValidEncoding("12a4".toCharArray()));
+        assertTrue(RadixEncoders.BASE10.isValidEncoding("1234".toCharArray()));
+    }
+
+    @Test
+    public void testConversionMatchesBigInteger() {
+        Random rand = new Random(7);
+        RadixEncoding[] encodings = {RadixEncoders.BASE10, RadixEncoders.BASE16, RadixEncoders.BASE36};
+        int[] lengths = {0, 1, 2, 17, 18, 19, 100, 255, 256, 1000, 4096, 5000};
+        for (RadixEncoding encoding : encodings) {
+            int radix = (int) encoding.getRadix();
+            for (int length : lengths) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    sb.append(encoding.getChar(rand.nextInt(radix)));
+                }
+                //leading zeros are not part of the fromBase10 output
+                String value = sb.toString().replaceFirst("^0+", "");
+                BigInteger expected = value.isEmpty() ? BigInteger.ZERO : new BigInteger(value, radix);
+                assertEquals(expected, encoding.toBase10(sb.toString().toCharArray()));
+                assertEquals(value, new String(encoding.fromBase10(expected)));
+            }
+        }
+    }
+
+    @Test
+    public void testToDigitsPadsWithZeros() {
+        int[] digits = new int[300];
+        BigInteger value = BigInteger.valueOf(36).pow(150).subtract(BigInteger.ONE);
+        RadixEncoders.BASE36.toDigits(value, digits, 0, 300);
+        for (int i = 0; i < 150; i++) {
+            assertEquals(0, digits[i]);
+            assertEquals(35, digits[150 + i]);
+        }
+        assertEquals(value, RadixEncoders.BASE36.toBigInteger(digits, 0, 300));
+    }
+
+    @Ignore
+    @Test
+    public void testConversionPerformance() {
+        Random rand = new Random();
+        RadixEncoding encoding = RadixEncoders.ASCII_PRINTABLE;
+        int radix = (int) encoding.getRadix();
+        for (int length : new int[]{16, 256, 4096, 65536}) {
+            char[] symbols = new char[length];
+            for (int i = 0; i < length; i++) {
+                symbols[i] = encoding.getChar(rand.nextInt(radix));
+            }
+            int reps = Math.max(1, 1000000 / length);
+            BigInteger value = null;
+            char[] result = null;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                for (int j = 0; j < reps; j++) {
+                    value = encoding.toBase10(symbols);
+                }
+                long toTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int j = 0; j < reps; j++) {
+                    result = encoding.fromBase10(value);
+                }
+                long fromTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int j = 0; j < Math.max(1, reps / 10); j++) {
+                    value = horner(encoding, symbols);
+                }
+                long hornerTime = (System.nanoTime() - start) / Math.max(1, reps / 10);
+                System.out.println(length + " symbols: toBase10 " + toTime / reps / 1000 + "us, fromBase10 " + fromTime / reps / 1000 + "us, digit at a time toBase10 " + hornerTime / 1000 + "us");
+            }
+            assertEquals(new String(symbols).replaceFirst("^!+", ""), new String(result));
+        }
+    }
+
+    /**
+     * The digit at a time conversion toBase10 used to do.
+     */
+    private static BigInteger horner(RadixEncoding encoding, char[] symbols) {
+        final BigInteger rad = BigInteger.valueOf(encoding.getRadix());
+        BigInteger x = BigInteger.ZERO;
+        BigInteger radPow = BigInteger.ONE;
+        for (int i = symbols.length - 1; i >= 0; i--) {
+            x = x.add(radPow.multiply(BigInteger.valueOf(encoding.getIndex(symbols[i]))));
+            radPow = radPow.multiply(rad);
+        }
+        return x;
+    }
 }